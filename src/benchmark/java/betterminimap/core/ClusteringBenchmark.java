@@ -0,0 +1,104 @@
+package betterminimap.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClusteringBenchmark {
+    @Param({"uniform", "blobs", "lines"})
+    public String distribution;
+
+    @Param({"100", "2000", "20000"})
+    public int units;
+
+    @Param({"1", "2", "8"})
+    public int teams;
+
+    @Param({"1", "12", "60"})
+    public int types;
+
+    @Param({"24"})
+    public float clusterWorld;
+
+    private UnitSnapshot snapshot;
+    private final UnitSnapshot[] refreshes = {new UnitSnapshot(), new UnitSnapshot()};
+    private int refresh;
+    private final ClusterBuffer clusters = new ClusterBuffer();
+    private final GreedyClusterGrid grid = new GreedyClusterGrid();
+    private final ClusterPyramid pyramid = new ClusterPyramid();
+    private final ClusterPyramid zoomPyramid = new ClusterPyramid();
+    private final ClusterPyramid refreshPyramid = new ClusterPyramid();
+
+    @Setup
+    public void setup() {
+        snapshot = SyntheticUnits.generate(distribution, units, teams, types, 42L);
+        zoomPyramid.begin(OverlayEngine.baseClusterCell);
+        zoomPyramid.addUnits(snapshot, 0, snapshot.size);
+        zoomPyramid.finish();
+        zoomPyramid.level(ClusterPyramid.maxLevels - 1);
+
+        // Two refreshes apart from each other by one unit in a hundred moving a few cells.
+        float cell = OverlayEngine.clusterBaseCell(clusterWorld);
+        for (int u = 0; u < snapshot.size; u++) {
+            float shift = u % 100 == 0 ? cell * 3f : 0f;
+            refreshes[0].add(snapshot.x[u], snapshot.y[u], snapshot.rotation[u], snapshot.team[u], snapshot.type[u], snapshot.id[u]);
+            refreshes[1].add(snapshot.x[u] + shift, snapshot.y[u], snapshot.rotation[u], snapshot.team[u], snapshot.type[u], snapshot.id[u]);
+        }
+        IntIndexMap indexById = new IntIndexMap();
+        refreshes[0].linkPrevious(refreshes[1], 1f, indexById);
+        refreshes[1].linkPrevious(refreshes[0], 1f, indexById);
+        refreshPyramid.begin(cell);
+        refreshPyramid.addUnits(refreshes[1], 0, snapshot.size);
+        refreshPyramid.finish();
+    }
+
+    @Benchmark
+    public int buildUnitClusters() {
+        clusters.clear();
+        grid.reset(clusterWorld);
+        UnitClustering.cluster(snapshot, 0, snapshot.size, clusters, grid, clusterWorld);
+        return clusters.size;
+    }
+
+    @Benchmark
+    public int buildClusterPyramid() {
+        pyramid.begin(OverlayEngine.clusterBaseCell(clusterWorld));
+        pyramid.addUnits(snapshot, 0, snapshot.size);
+        pyramid.finish();
+        return pyramid.cut(clusterWorld).size;
+    }
+
+    @Benchmark
+    public int refreshClusterPyramid() {
+        UnitSnapshot units = refreshes[refresh++ & 1];
+        refreshPyramid.begin(OverlayEngine.clusterBaseCell(clusterWorld), refreshPyramid, 1f);
+        refreshPyramid.addUnits(units, 0, units.size);
+        refreshPyramid.finish();
+        return refreshPyramid.cut(clusterWorld).size;
+    }
+
+    @Benchmark
+    public int zoomClusterPyramid() {
+        int total = 0;
+        for (float world = OverlayEngine.baseClusterCell; world < 512f; world *= 1.1f) {
+            total += zoomPyramid.cut(world).size;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,130 @@
+package betterminimap.core;
+
+import java.util.Arrays;
+
+// The cluster-centre grid the greedy clusterer used before the pyramid: clusters are bucketed by
+// their current centre and re-bucketed whenever a merge moves it into another cell.
+final class GreedyClusterGrid {
+    private static final long empty = -1L;
+
+    private float cellSize = 1f;
+    private float invCellSize = 1f;
+
+    private long[] keys = new long[256];
+    private int[] heads = new int[256];
+    private int mask = 255;
+    private int used;
+
+    private int[] next = new int[128];
+
+    GreedyClusterGrid() {
+        Arrays.fill(keys, empty);
+    }
+
+    void reset(float cellSize) {
+        this.cellSize = Math.max(0.0001f, cellSize);
+        this.invCellSize = 1f / this.cellSize;
+        if (used > 0) {
+            Arrays.fill(keys, empty);
+            used = 0;
+        }
+    }
+
+    int cell(float v) {
+        return (int) Math.floor(v * invCellSize);
+    }
+
+    int head(int team, int type, int cx, int cy) {
+        int slot = find(key(team, type, cx, cy));
+        return slot < 0 ? -1 : heads[slot];
+    }
+
+    int next(int index) {
+        return next[index];
+    }
+
+    void insert(int index, int team, int type, float x, float y) {
+        link(index, key(team, type, cell(x), cell(y)));
+    }
+
+    void move(int index, int team, int type, float oldX, float oldY, float newX, float newY) {
+        int ocx = cell(oldX), ocy = cell(oldY);
+        int ncx = cell(newX), ncy = cell(newY);
+        if (ocx == ncx && ocy == ncy) return;
+
+        unlink(index, key(team, type, ocx, ocy));
+        link(index, key(team, type, ncx, ncy));
+    }
+
+    private void link(int index, long key) {
+        if (index >= next.length) next = Arrays.copyOf(next, Math.max(index + 1, next.length * 2));
+
+        int slot = find(key);
+        if (slot < 0) {
+            if ((used + 1) * 2 > keys.length) grow();
+            slot = claim(key);
+            heads[slot] = -1;
+        }
+        next[index] = heads[slot];
+        heads[slot] = index;
+    }
+
+    private void unlink(int index, long key) {
+        int slot = find(key);
+        if (slot < 0) return;
+
+        int prev = -1;
+        for (int i = heads[slot]; i != -1; prev = i, i = next[i]) {
+            if (i != index) continue;
+            if (prev == -1) heads[slot] = next[i];
+            else next[prev] = next[i];
+            return;
+        }
+    }
+
+    private int find(long key) {
+        int slot = hash(key) & mask;
+        while (true) {
+            long k = keys[slot];
+            if (k == empty) return -1;
+            if (k == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int claim(long key) {
+        int slot = hash(key) & mask;
+        while (keys[slot] != empty) slot = (slot + 1) & mask;
+        keys[slot] = key;
+        used++;
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldHeads = heads;
+
+        keys = new long[oldKeys.length * 2];
+        heads = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+        used = 0;
+        Arrays.fill(keys, empty);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == empty) continue;
+            heads[claim(oldKeys[i])] = oldHeads[i];
+        }
+    }
+
+    private static long key(int team, int type, int cx, int cy) {
+        return ((long) (team & 0xff) << 54)
+            | ((long) (type & 0xffff) << 38)
+            | ((long) (cx & 0x7ffff) << 19)
+            | (long) (cy & 0x7ffff);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
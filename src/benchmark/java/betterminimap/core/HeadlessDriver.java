@@ -0,0 +1,119 @@
+package betterminimap.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+public final class HeadlessDriver {
+    private static final int warmupFrames = 1000;
+    private static final int measuredFrames = 600;
+
+    private static int failures;
+
+    private HeadlessDriver() {
+    }
+
+    public static void main(String[] args) {
+        float budgetScale = Float.parseFloat(System.getProperty("betterminimap.budgetScale", "1"));
+        boolean profile = Boolean.getBoolean("betterminimap.profile");
+
+        runScenario("uniform", 2000, 2, 12, 2.0f * budgetScale, profile);
+        runScenario("blobs", 2000, 8, 60, 2.0f * budgetScale, profile);
+        runScenario("lines", 20000, 2, 12, 12.0f * budgetScale, profile);
+        runScenario("blobs", 20000, 8, 60, 12.0f * budgetScale, profile);
+
+        String replay = System.getProperty("betterminimap.replay");
+        if (replay != null && !replay.isEmpty()) runReplay(new File(replay), profile);
+
+        if (failures > 0) {
+            System.err.println(failures + " budget check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("all budgets met");
+    }
+
+    private static void runReplay(File file, boolean profile) {
+        SnapshotReplay replay;
+        try {
+            replay = new SnapshotReplay(file);
+        } catch (IOException e) {
+            check(false, "replay " + file + ": " + e);
+            return;
+        }
+        if (replay.frameCount() == 0) {
+            check(false, "replay " + file + " has no frames");
+            return;
+        }
+
+        // Recordings carry raw content ids, so every unit type and block is enabled.
+        SyntheticWorld settings = new SyntheticWorld("uniform", 0, 1, 1 << 16, 1 << 16, 1L);
+        Arrays.fill(settings.unitFilter, true);
+        OverlayEngine engine = new OverlayEngine();
+        OverlayProfiler.setEnabled(profile);
+
+        int frames = replay.frameCount();
+        long[] samples = new long[frames];
+        int maxUnits = 0;
+        while (replay.next()) {
+            float clusterWorld = SyntheticWorld.clusterWorld(replay, settings);
+            long start = System.nanoTime();
+            engine.refresh(replay, settings, replay, 1f, clusterWorld);
+            engine.cluster(clusterWorld);
+            samples[replay.frame()] = System.nanoTime() - start;
+            maxUnits = Math.max(maxUnits, replay.units().size);
+            OverlayProfiler.endFrame();
+        }
+
+        Arrays.sort(samples);
+        System.out.println(String.format(Locale.ROOT, "replay   %s frames=%d maxUnits=%d p50=%.3fms p95=%.3fms max=%.3fms",
+            file.getName(), frames, maxUnits, samples[frames / 2] / 1e6f, samples[frames * 95 / 100] / 1e6f, samples[frames - 1] / 1e6f));
+
+        if (profile) {
+            StringBuilder json = new StringBuilder();
+            OverlayProfiler.writeJson(json);
+            System.out.print(json);
+            OverlayProfiler.setEnabled(false);
+        }
+    }
+
+    private static void runScenario(String distribution, int unitCount, int teams, int types, float budgetMs, boolean profile) {
+        SyntheticWorld world = new SyntheticWorld(distribution, unitCount, teams, types, 64, 42L);
+        world.zoom = 32f;
+        OverlayEngine engine = new OverlayEngine();
+        Random rand = new Random(42L);
+        long[] samples = new long[measuredFrames];
+
+        for (int frame = 0; frame < warmupFrames + measuredFrames; frame++) {
+            if (frame == warmupFrames) OverlayProfiler.setEnabled(profile);
+            world.step(rand, 4f);
+            long start = System.nanoTime();
+            engine.refresh(world, world, world, 1f, world.clusterWorld());
+            engine.cluster(world.clusterWorld());
+            long elapsed = System.nanoTime() - start;
+            if (frame >= warmupFrames) samples[frame - warmupFrames] = elapsed;
+            OverlayProfiler.endFrame();
+        }
+
+        Arrays.sort(samples);
+        float p50 = samples[measuredFrames / 2] / 1e6f;
+        float p95 = samples[measuredFrames * 95 / 100] / 1e6f;
+        System.out.println(String.format(Locale.ROOT, "%-8s units=%-6d teams=%d types=%-3d p50=%.3fms p95=%.3fms budget=%.1fms",
+            distribution, unitCount, teams, types, p50, p95, budgetMs));
+        check(p95 <= budgetMs, distribution + "/" + unitCount + " refresh p95 within budget");
+
+        if (profile) {
+            StringBuilder json = new StringBuilder();
+            OverlayProfiler.writeJson(json);
+            System.out.print(json);
+            OverlayProfiler.setEnabled(false);
+        }
+    }
+
+    private static void check(boolean ok, String what) {
+        if (ok) return;
+        failures++;
+        System.err.println("FAILED: " + what);
+    }
+}
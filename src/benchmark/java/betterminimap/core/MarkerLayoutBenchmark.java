@@ -0,0 +1,57 @@
+package betterminimap.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarkerLayoutBenchmark {
+    @Param({"100", "2000", "20000"})
+    public int buildings;
+
+    private float[] x;
+    private float[] y;
+    private int[] size;
+    private float[] out;
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(42L);
+        x = new float[buildings];
+        y = new float[buildings];
+        size = new int[buildings];
+        out = new float[buildings * 3];
+        for (int i = 0; i < buildings; i++) {
+            size[i] = 1 + rand.nextInt(4);
+            float offset = size[i] % 2 == 0 ? 4f : 0f;
+            x[i] = rand.nextInt(500) * 8f + offset;
+            y[i] = rand.nextInt(500) * 8f + offset;
+        }
+    }
+
+    @Benchmark
+    public float[] drawMarkersLayout() {
+        for (int i = 0; i < buildings; i++) {
+            out[i * 3] = MarkerMath.snapHalfTile(x[i], 8f);
+            out[i * 3 + 1] = MarkerMath.snapHalfTile(y[i], 8f);
+            out[i * 3 + 2] = MarkerMath.buildingSize(size[i], 8f, 1.2f) * 1.08f;
+        }
+        return out;
+    }
+}
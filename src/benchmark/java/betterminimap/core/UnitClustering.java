@@ -0,0 +1,46 @@
+package betterminimap.core;
+
+final class UnitClustering {
+    private UnitClustering() {
+    }
+
+    static void cluster(UnitSnapshot units, int from, int to, ClusterBuffer clusters, GreedyClusterGrid grid, float clusterWorld) {
+        float clusterDst2 = clusterWorld * clusterWorld;
+
+        for (int i = from; i < to; i++) {
+            float ux = units.x[i], uy = units.y[i];
+            int teamId = units.team[i];
+            int typeId = units.type[i];
+            int cx = grid.cell(ux);
+            int cy = grid.cell(uy);
+
+            int nearest = -1;
+            float nearestDst2 = Float.MAX_VALUE;
+
+            for (int gx = cx - 1; gx <= cx + 1; gx++) {
+                for (int gy = cy - 1; gy <= cy + 1; gy++) {
+                    for (int j = grid.head(teamId, typeId, gx, gy); j != -1; j = grid.next(j)) {
+                        if (clusters.type[j] != typeId || clusters.team[j] != teamId) continue;
+
+                        float dx = clusters.x[j] - ux, dy = clusters.y[j] - uy;
+                        float dst2 = dx * dx + dy * dy;
+                        if (dst2 > clusterDst2) continue;
+                        if (dst2 < nearestDst2 || (dst2 == nearestDst2 && j < nearest)) {
+                            nearestDst2 = dst2;
+                            nearest = j;
+                        }
+                    }
+                }
+            }
+
+            if (nearest == -1) {
+                int index = clusters.add(units, i);
+                grid.insert(index, teamId, typeId, ux, uy);
+            } else {
+                float ox = clusters.x[nearest], oy = clusters.y[nearest];
+                clusters.merge(nearest, units, i);
+                grid.move(nearest, teamId, typeId, ox, oy, clusters.x[nearest], clusters.y[nearest]);
+            }
+        }
+    }
+}
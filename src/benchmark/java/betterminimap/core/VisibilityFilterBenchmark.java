@@ -0,0 +1,55 @@
+package betterminimap.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VisibilityFilterBenchmark {
+    @Param({"uniform", "blobs", "lines"})
+    public String distribution;
+
+    @Param({"100", "2000", "20000"})
+    public int units;
+
+    @Param({"1", "2", "8"})
+    public int teams;
+
+    @Param({"1", "12", "60"})
+    public int types;
+
+    private UnitSnapshot candidates;
+    private final UnitSnapshot visible = new UnitSnapshot();
+    private final ViewRect view = new ViewRect();
+    private boolean[] typeEnabled;
+
+    @Setup
+    public void setup() {
+        candidates = SyntheticUnits.generate(distribution, units, teams, types, 42L);
+        typeEnabled = new boolean[types];
+        for (int i = 0; i < types; i++) typeEnabled[i] = i % 4 != 3;
+    }
+
+    @Benchmark
+    public int rebuildVisibleCache() {
+        float side = 32f * 2f * 8f * 2f;
+        float x = SyntheticUnits.worldSize / 2f - side / 2f;
+        UnitFilter.filter(candidates, visible, typeEnabled, 1, true, true, view.set(x, x, side, side));
+        return visible.size;
+    }
+}
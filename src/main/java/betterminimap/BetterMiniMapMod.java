@@ -23,7 +23,7 @@ public class BetterMiniMapMod extends Mod {
             GithubUpdateCheck.applyDefaults();
 
             ui.settings.addCategory("@settings.betterminimap", Icon.map, BetterMiniMapFeature::buildSettings);
-            GithubUpdateCheck.checkOnce();
+            GithubUpdateCheck.schedule();
         });
     }
 }
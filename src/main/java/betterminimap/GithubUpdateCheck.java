@@ -1,9 +1,10 @@
 package betterminimap;
 
 import arc.Core;
-import arc.util.Http;
+import arc.util.Log;
 import arc.util.Strings;
-import arc.util.serialization.Jval;
+import arc.util.Time;
+import betterminimap.update.UpdateFeed;
 import mindustry.Vars;
 import mindustry.gen.Icon;
 import mindustry.mod.Mods;
@@ -22,8 +23,11 @@ public final class GithubUpdateCheck {
     private static final String keyUpdateCheckShowDialog = "mmplus-updatecheck-dialog";
     private static final String keyUpdateCheckLastAt = "mmplus-updatecheck-lastAt";
     private static final String keyUpdateCheckIgnoreVersion = "mmplus-updatecheck-ignore";
+    private static final String keyUpdateCheckCachePrefix = "mmplus-updatecheck-";
 
     private static final long checkIntervalMs = 6L * 60L * 60L * 1000L;
+    private static final float startupDelaySeconds = 10f;
+    private static final int timeoutMs = 25000;
     private static final Pattern numberPattern = Pattern.compile("\\d+");
 
     private static boolean checked;
@@ -44,6 +48,11 @@ public final class GithubUpdateCheck {
         return keyUpdateCheckShowDialog;
     }
 
+    // Keeps the check out of ClientLoadEvent: it runs a few seconds after the menu is up.
+    public static void schedule() {
+        Time.run(startupDelaySeconds * 60f, GithubUpdateCheck::checkOnce);
+    }
+
     public static void checkOnce() {
         if (checked) return;
         checked = true;
@@ -61,59 +70,64 @@ public final class GithubUpdateCheck {
         Mods.LoadedMod mod = Vars.mods.getMod(modName);
         if (mod == null || mod.meta == null) return;
 
-        String current = normalizeVersion(Strings.stripColors(mod.meta.version));
+        String current = UpdateFeed.normalizeVersion(Strings.stripColors(mod.meta.version));
         if (current.isEmpty()) return;
 
-        String ignored = normalizeVersion(Strings.stripColors(Core.settings.getString(keyUpdateCheckIgnoreVersion, "")));
-
-        String apiUrl = "https://api.github.com/repos/" + owner + "/" + repo + "/releases/latest";
-        Http.get(apiUrl)
-            .timeout(25000)
-            .header("User-Agent", "Mindustry")
-            .error(err -> checkFromRawModJson(mod, current, ignored))
-            .submit(res -> {
-                try {
-                    Jval json = Jval.read(res.getResultAsString());
-                    String latest = normalizeVersion(Strings.stripColors(json.getString("tag_name", "")));
-                    if (latest.isEmpty()) latest = normalizeVersion(Strings.stripColors(json.getString("name", "")));
-                    if (latest.isEmpty()) {
-                        checkFromRawModJson(mod, current, ignored);
-                        return;
-                    }
-
-                    if (!ignored.isEmpty() && compareVersions(latest, ignored) == 0) return;
-                    if (compareVersions(latest, current) <= 0) return;
-
-                    String htmlUrl = Strings.stripColors(json.getString("html_url", ""));
-                    if (htmlUrl == null || htmlUrl.isEmpty()) {
-                        htmlUrl = "https://github.com/" + owner + "/" + repo + "/releases/latest";
-                    }
-                    notifyUpdate(mod, current, latest, htmlUrl);
-                } catch (Throwable ignoredErr) {
-                    checkFromRawModJson(mod, current, ignored);
-                }
-            });
+        String ignored = UpdateFeed.normalizeVersion(Strings.stripColors(Core.settings.getString(keyUpdateCheckIgnoreVersion, "")));
+
+        UpdateFeed.Source[] sources = {
+            loadCache(new UpdateFeed.Source("api", System.getProperty("betterminimap.updatecheck.api",
+                "https://api.github.com/repos/" + owner + "/" + repo + "/releases/latest"), "html_url", "tag_name", "name")),
+            loadCache(new UpdateFeed.Source("raw", System.getProperty("betterminimap.updatecheck.raw",
+                "https://raw.githubusercontent.com/" + owner + "/" + repo + "/main/src/main/resources/mod.json"), null, "version"))
+        };
+
+        Thread thread = new Thread(() -> {
+            try {
+                UpdateFeed.fetchAll(sources, timeoutMs, (source, first) -> {
+                    String version = source.version, releaseUrl = source.releaseUrl;
+                    String etag = source.etag, lastModified = source.lastModified;
+                    boolean valid = source.valid;
+                    Core.app.post(() -> {
+                        if (valid) saveCache(source.name, etag, lastModified, version, releaseUrl);
+                        if (first) onLatest(mod, current, ignored, version, releaseUrl);
+                    });
+                });
+            } catch (Throwable t) {
+                Log.err("[betterminimap] Update check failed", t);
+            }
+        }, "betterminimap-update-check");
+        thread.setDaemon(true);
+        thread.start();
     }
 
-    private static void checkFromRawModJson(Mods.LoadedMod mod, String current, String ignored) {
-        String url = "https://raw.githubusercontent.com/" + owner + "/" + repo + "/main/src/main/resources/mod.json";
-        Http.get(url)
-            .timeout(25000)
-            .error(err -> {
-            })
-            .submit(res -> {
-                try {
-                    Jval json = Jval.read(res.getResultAsString());
-                    String latest = normalizeVersion(Strings.stripColors(json.getString("version", "")));
-                    if (latest.isEmpty()) return;
-                    if (!ignored.isEmpty() && compareVersions(latest, ignored) == 0) return;
-                    if (compareVersions(latest, current) <= 0) return;
-
-                    String releasesUrl = "https://github.com/" + owner + "/" + repo + "/releases/latest";
-                    notifyUpdate(mod, current, latest, releasesUrl);
-                } catch (Throwable ignoredErr) {
-                }
-            });
+    private static void onLatest(Mods.LoadedMod mod, String current, String ignored, String latest, String releaseUrl) {
+        latest = UpdateFeed.normalizeVersion(Strings.stripColors(latest));
+        if (latest.isEmpty()) return;
+        if (!ignored.isEmpty() && compareVersions(latest, ignored) == 0) return;
+        if (compareVersions(latest, current) <= 0) return;
+
+        if (releaseUrl == null || releaseUrl.isEmpty()) {
+            releaseUrl = "https://github.com/" + owner + "/" + repo + "/releases/latest";
+        }
+        notifyUpdate(mod, current, latest, Strings.stripColors(releaseUrl));
+    }
+
+    private static UpdateFeed.Source loadCache(UpdateFeed.Source source) {
+        String prefix = keyUpdateCheckCachePrefix + source.name;
+        source.etag = Core.settings.getString(prefix + "-etag", "");
+        source.lastModified = Core.settings.getString(prefix + "-modified", "");
+        source.version = Core.settings.getString(prefix + "-version", "");
+        source.releaseUrl = Core.settings.getString(prefix + "-url", "");
+        return source;
+    }
+
+    private static void saveCache(String name, String etag, String lastModified, String version, String releaseUrl) {
+        String prefix = keyUpdateCheckCachePrefix + name;
+        Core.settings.put(prefix + "-etag", etag);
+        Core.settings.put(prefix + "-modified", lastModified);
+        Core.settings.put(prefix + "-version", version);
+        Core.settings.put(prefix + "-url", releaseUrl);
     }
 
     private static void notifyUpdate(Mods.LoadedMod mod, String current, String latest, String releaseUrl) {
@@ -153,13 +167,6 @@ public final class GithubUpdateCheck {
         });
     }
 
-    private static String normalizeVersion(String raw) {
-        if (raw == null) return "";
-        String out = raw.trim();
-        if (out.startsWith("v") || out.startsWith("V")) out = out.substring(1).trim();
-        return out;
-    }
-
     private static int compareVersions(String a, String b) {
         int[] pa = parseVersionParts(a);
         int[] pb = parseVersionParts(b);
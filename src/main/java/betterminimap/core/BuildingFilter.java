@@ -0,0 +1,29 @@
+package betterminimap.core;
+
+public final class BuildingFilter {
+    private BuildingFilter() {
+    }
+
+    public static void filter(BuildingSnapshot in, BuildingSnapshot out, OverlaySettings settings, int playerTeam, ViewRect rect) {
+        filter(in, out, settings, playerTeam, rect, null);
+    }
+
+    public static void filter(BuildingSnapshot in, BuildingSnapshot out, OverlaySettings settings, int playerTeam, ViewRect rect, VisibilityMask fog) {
+        out.clear();
+        boolean fogged = fog != null && fog.enabled();
+        boolean[] blockEnabled = settings.blockFilter();
+        boolean showEnemy = settings.showEnemyBuildings();
+        boolean showFriendly = settings.showFriendlyBuildings();
+
+        for (int i = 0; i < in.size; i++) {
+            if (fogged && in.team[i] != playerTeam && !fog.buildingVisible(in.x[i], in.y[i], in.blockSize[i])) continue;
+            int block = in.block[i];
+            if (block < 0 || block >= blockEnabled.length || !blockEnabled[block]) continue;
+            boolean enemy = in.team[i] != playerTeam;
+            if (enemy && !showEnemy) continue;
+            if (!enemy && !showFriendly) continue;
+            if (!rect.contains(in.x[i], in.y[i])) continue;
+            out.add(in.x[i], in.y[i], block, in.blockSize[i], in.team[i], in.tile[i]);
+        }
+    }
+}
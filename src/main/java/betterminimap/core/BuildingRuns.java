@@ -0,0 +1,160 @@
+package betterminimap.core;
+
+import java.util.Arrays;
+
+public final class BuildingRuns {
+    private static final int coordBits = 14;
+    private static final int coordMask = (1 << coordBits) - 1;
+    private static final int colsBits = 10;
+    private static final int colsMask = (1 << colsBits) - 1;
+
+    public int size;
+    public float[] x = new float[64];
+    public float[] y = new float[64];
+    public float[] spanX = new float[64];
+    public float[] spanY = new float[64];
+    public int[] block = new int[64];
+    public int[] blockSize = new int[64];
+    public int[] team = new int[64];
+    public int[] count = new int[64];
+
+    private long[] keys = new long[256];
+    private long[] rowKeys = new long[256];
+    private int chunkHalfTiles;
+
+    public void clear() {
+        size = 0;
+    }
+
+    public boolean sameAs(BuildingRuns other) {
+        if (size != other.size) return false;
+        for (int i = 0; i < size; i++) {
+            if (x[i] != other.x[i] || y[i] != other.y[i] || spanX[i] != other.spanX[i] || spanY[i] != other.spanY[i]) return false;
+            if (block[i] != other.block[i] || blockSize[i] != other.blockSize[i] || team[i] != other.team[i]) return false;
+        }
+        return true;
+    }
+
+    // Joins same-team, same-block buildings into rectangles: first horizontal runs of
+    // touching buildings, then runs stacked directly on top of each other with the same
+    // start and length. Positions are compared in half tiles so even-sized blocks line up.
+    public void build(BuildingSnapshot in, float tilesize) {
+        build(in, tilesize, 0);
+    }
+
+    // With chunkTiles > 0 no rectangle crosses a chunk border, so a chunk's runs depend only on
+    // that chunk's buildings and come out the same however large the collected area was.
+    public void build(BuildingSnapshot in, float tilesize, int chunkTiles) {
+        size = 0;
+        chunkHalfTiles = Math.max(0, chunkTiles) * 2;
+        int n = in.size;
+        if (n == 0) return;
+        if (keys.length < n) keys = new long[Math.max(n, keys.length * 2)];
+
+        float half = tilesize / 2f;
+        int valid = 0;
+        for (int i = 0; i < n; i++) {
+            int hx = Math.round(in.x[i] / half);
+            int hy = Math.round(in.y[i] / half);
+            int bsize = in.blockSize[i];
+            if (hx < 0 || hy < 0 || hx > coordMask || hy > coordMask || bsize < 1 || bsize > 15) {
+                addRect(in.x[i], in.y[i], 0f, 0f, in.block[i], bsize, in.team[i], 1);
+                continue;
+            }
+            keys[valid++] = ((long) (in.team[i] & 0xff) << 56) | ((long) (in.block[i] & 0xffff) << 40) | ((long) bsize << 36)
+                | ((long) hy << coordBits) | hx;
+        }
+        Arrays.sort(keys, 0, valid);
+
+        int groupStart = 0;
+        int rows = 0;
+        if (rowKeys.length < valid) rowKeys = new long[Math.max(valid, rowKeys.length * 2)];
+
+        int i = 0;
+        while (i < valid) {
+            long key = keys[i];
+            long group = key >>> 36;
+            int bsize = (int) (group & 0xf);
+            int hy = (int) (key >>> coordBits) & coordMask;
+            int hx0 = (int) key & coordMask;
+
+            int cols = 1;
+            int j = i + 1;
+            while (j < valid && cols < colsMask) {
+                long next = keys[j];
+                if (next >>> 36 != group || ((int) (next >>> coordBits) & coordMask) != hy) break;
+                if (((int) next & coordMask) != hx0 + cols * 2 * bsize) break;
+                if (chunk(hx0 + cols * 2 * bsize) != chunk(hx0)) break;
+                cols++;
+                j++;
+            }
+            rowKeys[rows++] = ((long) hx0 << (colsBits + coordBits)) | ((long) cols << coordBits) | hy;
+            i = j;
+
+            if (i == valid || keys[i] >>> 36 != group) {
+                mergeRows(groupStart, rows, group, half);
+                groupStart = rows;
+            }
+        }
+    }
+
+    private void mergeRows(int from, int to, long group, float half) {
+        Arrays.sort(rowKeys, from, to);
+
+        int bsize = (int) (group & 0xf);
+        int blockId = (int) (group >>> 4) & 0xffff;
+        int teamId = (int) (group >>> 20) & 0xff;
+
+        int i = from;
+        while (i < to) {
+            long row = rowKeys[i];
+            long shape = row >>> coordBits;
+            int hy0 = (int) row & coordMask;
+            int rowCount = 1;
+            int j = i + 1;
+            while (j < to && rowKeys[j] >>> coordBits == shape && ((int) rowKeys[j] & coordMask) == hy0 + rowCount * 2 * bsize
+                && chunk(hy0 + rowCount * 2 * bsize) == chunk(hy0)) {
+                rowCount++;
+                j++;
+            }
+            i = j;
+
+            int hx0 = (int) (shape >>> colsBits);
+            int cols = (int) shape & colsMask;
+            float spanW = (cols - 1) * 2 * bsize * half;
+            float spanH = (rowCount - 1) * 2 * bsize * half;
+            addRect(hx0 * half + spanW / 2f, hy0 * half + spanH / 2f, spanW, spanH, blockId, bsize, teamId, cols * rowCount);
+        }
+    }
+
+    // Same split as the building layer's chunks: borders fall on tile edges, and a building
+    // belongs to the chunk holding its centre.
+    private int chunk(int halfTiles) {
+        return chunkHalfTiles == 0 ? 0 : (halfTiles + 1) / chunkHalfTiles;
+    }
+
+    private void addRect(float cx, float cy, float w, float h, int blockId, int bsize, int teamId, int buildings) {
+        if (size == x.length) grow();
+        x[size] = cx;
+        y[size] = cy;
+        spanX[size] = w;
+        spanY[size] = h;
+        block[size] = blockId;
+        blockSize[size] = bsize;
+        team[size] = teamId;
+        count[size] = buildings;
+        size++;
+    }
+
+    private void grow() {
+        int cap = x.length * 2;
+        x = Arrays.copyOf(x, cap);
+        y = Arrays.copyOf(y, cap);
+        spanX = Arrays.copyOf(spanX, cap);
+        spanY = Arrays.copyOf(spanY, cap);
+        block = Arrays.copyOf(block, cap);
+        blockSize = Arrays.copyOf(blockSize, cap);
+        team = Arrays.copyOf(team, cap);
+        count = Arrays.copyOf(count, cap);
+    }
+}
@@ -0,0 +1,38 @@
+package betterminimap.core;
+
+import java.util.Arrays;
+
+public final class BuildingSnapshot {
+    public int size;
+    public float[] x = new float[256];
+    public float[] y = new float[256];
+    public int[] block = new int[256];
+    public int[] blockSize = new int[256];
+    public int[] team = new int[256];
+    public int[] tile = new int[256];
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(float bx, float by, int bblock, int bsize, int bteam, int btile) {
+        if (size == x.length) grow();
+        x[size] = bx;
+        y[size] = by;
+        block[size] = bblock;
+        blockSize[size] = bsize;
+        team[size] = bteam;
+        tile[size] = btile;
+        size++;
+    }
+
+    private void grow() {
+        int cap = x.length * 2;
+        x = Arrays.copyOf(x, cap);
+        y = Arrays.copyOf(y, cap);
+        block = Arrays.copyOf(block, cap);
+        blockSize = Arrays.copyOf(blockSize, cap);
+        team = Arrays.copyOf(team, cap);
+        tile = Arrays.copyOf(tile, cap);
+    }
+}
@@ -0,0 +1,190 @@
+package betterminimap.core;
+
+import java.util.Arrays;
+
+public final class ClusterBuffer {
+    public int size;
+    public float[] x = new float[128];
+    public float[] y = new float[128];
+    public float[] dirx = new float[128];
+    public float[] diry = new float[128];
+    public float[] fallbackRotation = new float[128];
+    public int[] count = new int[128];
+    public int[] team = new int[128];
+    public int[] type = new int[128];
+    public int[] id = new int[128];
+
+    public float[] prevX = new float[128];
+    public float[] prevY = new float[128];
+    public float[] prevDirx = new float[128];
+    public float[] prevDiry = new float[128];
+    public float[] prevFallbackRotation = new float[128];
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int append() {
+        if (size == x.length) grow();
+        return size++;
+    }
+
+    public int add(UnitSnapshot units, int unit) {
+        int i = append();
+        set(i, units, unit);
+        return i;
+    }
+
+    public void set(int i, UnitSnapshot units, int unit) {
+        float rotation = units.rotation[unit];
+        float prevRotation = units.prevRotation[unit];
+
+        x[i] = units.x[unit];
+        y[i] = units.y[unit];
+        dirx[i] = MarkerMath.cosDeg(rotation);
+        diry[i] = MarkerMath.sinDeg(rotation);
+        fallbackRotation[i] = rotation;
+        count[i] = 1;
+        team[i] = units.team[unit];
+        type[i] = units.type[unit];
+
+        prevX[i] = units.prevX[unit];
+        prevY[i] = units.prevY[unit];
+        prevDirx[i] = MarkerMath.cosDeg(prevRotation);
+        prevDiry[i] = MarkerMath.sinDeg(prevRotation);
+        prevFallbackRotation[i] = prevRotation;
+    }
+
+    public void merge(int i, UnitSnapshot units, int unit) {
+        int n = ++count[i];
+        float rotation = units.rotation[unit];
+        float prevRotation = units.prevRotation[unit];
+
+        x[i] += (units.x[unit] - x[i]) / n;
+        y[i] += (units.y[unit] - y[i]) / n;
+        dirx[i] += MarkerMath.cosDeg(rotation);
+        diry[i] += MarkerMath.sinDeg(rotation);
+        fallbackRotation[i] = rotation;
+
+        prevX[i] += (units.prevX[unit] - prevX[i]) / n;
+        prevY[i] += (units.prevY[unit] - prevY[i]) / n;
+        prevDirx[i] += MarkerMath.cosDeg(prevRotation);
+        prevDiry[i] += MarkerMath.sinDeg(prevRotation);
+        prevFallbackRotation[i] = prevRotation;
+    }
+
+    public int copy(ClusterBuffer from, int j) {
+        int i = append();
+        set(i, from, j);
+        return i;
+    }
+
+    public void set(int i, ClusterBuffer from, int j) {
+        x[i] = from.x[j];
+        y[i] = from.y[j];
+        dirx[i] = from.dirx[j];
+        diry[i] = from.diry[j];
+        fallbackRotation[i] = from.fallbackRotation[j];
+        count[i] = from.count[j];
+        team[i] = from.team[j];
+        type[i] = from.type[j];
+        id[i] = from.id[j];
+
+        prevX[i] = from.prevX[j];
+        prevY[i] = from.prevY[j];
+        prevDirx[i] = from.prevDirx[j];
+        prevDiry[i] = from.prevDiry[j];
+        prevFallbackRotation[i] = from.prevFallbackRotation[j];
+    }
+
+    public void copyFrom(ClusterBuffer from) {
+        int n = from.size;
+        while (x.length < n) grow();
+        System.arraycopy(from.x, 0, x, 0, n);
+        System.arraycopy(from.y, 0, y, 0, n);
+        System.arraycopy(from.dirx, 0, dirx, 0, n);
+        System.arraycopy(from.diry, 0, diry, 0, n);
+        System.arraycopy(from.fallbackRotation, 0, fallbackRotation, 0, n);
+        System.arraycopy(from.count, 0, count, 0, n);
+        System.arraycopy(from.team, 0, team, 0, n);
+        System.arraycopy(from.type, 0, type, 0, n);
+        System.arraycopy(from.id, 0, id, 0, n);
+        System.arraycopy(from.prevX, 0, prevX, 0, n);
+        System.arraycopy(from.prevY, 0, prevY, 0, n);
+        System.arraycopy(from.prevDirx, 0, prevDirx, 0, n);
+        System.arraycopy(from.prevDiry, 0, prevDiry, 0, n);
+        System.arraycopy(from.prevFallbackRotation, 0, prevFallbackRotation, 0, n);
+        size = n;
+    }
+
+    // Moves the previous state of cluster i `progress` of the way to its current one, i.e. to
+    // where it is drawn at that point of the interpolation.
+    public void advance(int i, float progress) {
+        if (progress >= 1f) {
+            prevX[i] = x[i];
+            prevY[i] = y[i];
+            prevDirx[i] = dirx[i];
+            prevDiry[i] = diry[i];
+            prevFallbackRotation[i] = fallbackRotation[i];
+            return;
+        }
+        float r = MarkerMath.lerpAngle(prevRotation(i), rotation(i), progress);
+        prevX[i] = MarkerMath.lerp(prevX[i], x[i], progress);
+        prevY[i] = MarkerMath.lerp(prevY[i], y[i], progress);
+        prevDirx[i] = MarkerMath.cosDeg(r);
+        prevDiry[i] = MarkerMath.sinDeg(r);
+        prevFallbackRotation[i] = r;
+    }
+
+    // Removes cluster i by moving the last one into its place.
+    public void removeSwap(int i) {
+        int last = --size;
+        if (i != last) set(i, this, last);
+    }
+
+    public void absorb(int i, ClusterBuffer from, int j) {
+        int added = from.count[j];
+        int n = count[i] += added;
+        float weight = added / (float) n;
+
+        x[i] += (from.x[j] - x[i]) * weight;
+        y[i] += (from.y[j] - y[i]) * weight;
+        dirx[i] += from.dirx[j];
+        diry[i] += from.diry[j];
+        fallbackRotation[i] = from.fallbackRotation[j];
+
+        prevX[i] += (from.prevX[j] - prevX[i]) * weight;
+        prevY[i] += (from.prevY[j] - prevY[i]) * weight;
+        prevDirx[i] += from.prevDirx[j];
+        prevDiry[i] += from.prevDiry[j];
+        prevFallbackRotation[i] = from.prevFallbackRotation[j];
+    }
+
+    public float rotation(int i) {
+        if (Math.abs(dirx[i]) + Math.abs(diry[i]) < 0.0001f) return fallbackRotation[i];
+        return MarkerMath.angle(dirx[i], diry[i]);
+    }
+
+    public float prevRotation(int i) {
+        if (Math.abs(prevDirx[i]) + Math.abs(prevDiry[i]) < 0.0001f) return prevFallbackRotation[i];
+        return MarkerMath.angle(prevDirx[i], prevDiry[i]);
+    }
+
+    private void grow() {
+        int cap = x.length * 2;
+        x = Arrays.copyOf(x, cap);
+        y = Arrays.copyOf(y, cap);
+        dirx = Arrays.copyOf(dirx, cap);
+        diry = Arrays.copyOf(diry, cap);
+        fallbackRotation = Arrays.copyOf(fallbackRotation, cap);
+        count = Arrays.copyOf(count, cap);
+        team = Arrays.copyOf(team, cap);
+        type = Arrays.copyOf(type, cap);
+        id = Arrays.copyOf(id, cap);
+        prevX = Arrays.copyOf(prevX, cap);
+        prevY = Arrays.copyOf(prevY, cap);
+        prevDirx = Arrays.copyOf(prevDirx, cap);
+        prevDiry = Arrays.copyOf(prevDiry, cap);
+        prevFallbackRotation = Arrays.copyOf(prevFallbackRotation, cap);
+    }
+}
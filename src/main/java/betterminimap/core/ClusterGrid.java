@@ -0,0 +1,125 @@
+package betterminimap.core;
+
+import java.util.Arrays;
+
+public final class ClusterGrid {
+    private static final long empty = -1L;
+
+    private float cellSize = 1f;
+    private float invCellSize = 1f;
+
+    private long[] keys = new long[256];
+    private int[] heads = new int[256];
+    private int mask = 255;
+    private int used;
+
+    private int[] next = new int[128];
+
+    public ClusterGrid() {
+        Arrays.fill(keys, empty);
+    }
+
+    public void reset(float cellSize) {
+        this.cellSize = Math.max(0.0001f, cellSize);
+        this.invCellSize = 1f / this.cellSize;
+        if (used > 0) {
+            Arrays.fill(keys, empty);
+            used = 0;
+        }
+    }
+
+    public float cellSize() {
+        return cellSize;
+    }
+
+    public void copyFrom(ClusterGrid other) {
+        cellSize = other.cellSize;
+        invCellSize = other.invCellSize;
+        if (keys.length != other.keys.length) {
+            keys = new long[other.keys.length];
+            heads = new int[other.heads.length];
+        }
+        System.arraycopy(other.keys, 0, keys, 0, keys.length);
+        System.arraycopy(other.heads, 0, heads, 0, heads.length);
+        mask = other.mask;
+        used = other.used;
+        if (next.length < other.next.length) next = new int[other.next.length];
+        System.arraycopy(other.next, 0, next, 0, other.next.length);
+    }
+
+    public int cell(float v) {
+        return (int) Math.floor(v * invCellSize);
+    }
+
+    public int head(int team, int type, int cx, int cy) {
+        int slot = find(key(team, type, cx, cy));
+        return slot < 0 ? -1 : heads[slot];
+    }
+
+    public int next(int index) {
+        return next[index];
+    }
+
+    public void insertCell(int index, int team, int type, int cx, int cy) {
+        link(index, key(team, type, cx, cy));
+    }
+
+    private void link(int index, long key) {
+        if (index >= next.length) next = Arrays.copyOf(next, Math.max(index + 1, next.length * 2));
+
+        int slot = find(key);
+        if (slot < 0) {
+            if ((used + 1) * 2 > keys.length) grow();
+            slot = claim(key);
+            heads[slot] = -1;
+        }
+        next[index] = heads[slot];
+        heads[slot] = index;
+    }
+
+    private int find(long key) {
+        int slot = hash(key) & mask;
+        while (true) {
+            long k = keys[slot];
+            if (k == empty) return -1;
+            if (k == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int claim(long key) {
+        int slot = hash(key) & mask;
+        while (keys[slot] != empty) slot = (slot + 1) & mask;
+        keys[slot] = key;
+        used++;
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldHeads = heads;
+
+        keys = new long[oldKeys.length * 2];
+        heads = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+        used = 0;
+        Arrays.fill(keys, empty);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == empty) continue;
+            heads[claim(oldKeys[i])] = oldHeads[i];
+        }
+    }
+
+    private static long key(int team, int type, int cx, int cy) {
+        return ((long) (team & 0xff) << 54)
+            | ((long) (type & 0xffff) << 38)
+            | ((long) (cx & 0x7ffff) << 19)
+            | (long) (cy & 0x7ffff);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
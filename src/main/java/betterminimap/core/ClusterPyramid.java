@@ -0,0 +1,302 @@
+package betterminimap.core;
+
+import java.util.Arrays;
+
+public final class ClusterPyramid {
+    public static final int maxLevels = 16;
+    public static final float cellHysteresis = 0.25f;
+    public static final float levelHysteresis = 0.15f;
+
+    // A unit that stays inside its cluster's cell band only updates the cluster once it has moved
+    // this far (in base cells) or turned this far (in degrees) from the state it last added; until
+    // then its cluster's centre and heading may lag it by at most that much.
+    public static final float moveThreshold = 0.125f;
+    public static final float turnThreshold = 5f;
+
+    private final ClusterBuffer[] levels = new ClusterBuffer[maxLevels];
+    private final int[][] cellX = new int[maxLevels][];
+    private final int[][] cellY = new int[maxLevels][];
+    private final ClusterGrid grid = new ClusterGrid();
+    private final ClusterSlots slots = new ClusterSlots();
+
+    private float baseCell = 1f;
+    private int built;
+    private int builtClusters;
+    private float slotsCell;
+    private boolean complete;
+
+    // Per unit, by snapshot index: its slot and the state it last added to it. `member`/`anchor*`
+    // are written this refresh; `prior*` are this pyramid's own buffers from last refresh, and
+    // `read*` whichever previous state addUnits matches against.
+    private int[] member = new int[256];
+    private float[] anchorX = new float[256];
+    private float[] anchorY = new float[256];
+    private float[] anchorRotation = new float[256];
+    private int memberCount;
+    private int[] priorMember = new int[256];
+    private float[] priorAnchorX = new float[256];
+    private float[] priorAnchorY = new float[256];
+    private float[] priorAnchorRotation = new float[256];
+    private int[] readMember;
+    private float[] readAnchorX;
+    private float[] readAnchorY;
+    private float[] readAnchorRotation;
+    private int readCount;
+    private boolean[] readSeen = new boolean[256];
+
+    private float lastCutCell;
+    private int reassigned;
+    private int evaluated;
+
+    public ClusterPyramid() {
+        for (int i = 0; i < maxLevels; i++) {
+            levels[i] = i == 0 ? slots.clusters : new ClusterBuffer();
+            cellX[i] = new int[128];
+            cellY[i] = new int[128];
+        }
+    }
+
+    public void begin(float baseCell) {
+        begin(baseCell, null, 1f);
+    }
+
+    public void begin(float baseCell, ClusterPyramid previous, float progress) {
+        begin(baseCell, previous, progress, previous == null ? lastCutCell : previous.lastCutCell);
+    }
+
+    // With a previous pyramid at the same base cell, its clusters are carried over: a unit is
+    // matched to its old cluster through its snapshot index, and only units that left their
+    // cluster's cell by more than cellHysteresis, moved or turned past the thresholds above,
+    // appeared or disappeared touch the clusters at all. The units added next must have been
+    // linked (UnitSnapshot.linkPrevious, at `progress`) to the snapshot the previous pyramid was
+    // built from. `shownCell` is the previously shown level, passed separately for callers that
+    // read it from a pyramid another thread is still cutting (see AsyncClusterWorker.submit).
+    public void begin(float baseCell, ClusterPyramid previous, float progress, float shownCell) {
+        this.baseCell = Math.max(0.0001f, baseCell);
+        built = 0;
+        builtClusters = 0;
+        reassigned = 0;
+        evaluated = 0;
+        lastCutCell = shownCell;
+
+        boolean carry = previous != null && previous.complete && previous.slotsCell == this.baseCell;
+        readCount = 0;
+        if (carry && previous == this) {
+            int[] m = priorMember;
+            priorMember = member;
+            member = m;
+            float[] f = priorAnchorX;
+            priorAnchorX = anchorX;
+            anchorX = f;
+            f = priorAnchorY;
+            priorAnchorY = anchorY;
+            anchorY = f;
+            f = priorAnchorRotation;
+            priorAnchorRotation = anchorRotation;
+            anchorRotation = f;
+            readMember = priorMember;
+            readAnchorX = priorAnchorX;
+            readAnchorY = priorAnchorY;
+            readAnchorRotation = priorAnchorRotation;
+            readCount = memberCount;
+        } else if (carry) {
+            slots.copyFrom(previous.slots);
+            readMember = previous.member;
+            readAnchorX = previous.anchorX;
+            readAnchorY = previous.anchorY;
+            readAnchorRotation = previous.anchorRotation;
+            readCount = previous.memberCount;
+        } else {
+            slots.reset(this.baseCell);
+        }
+        if (readSeen.length < readCount) readSeen = new boolean[Math.max(readCount, readSeen.length * 2)];
+        Arrays.fill(readSeen, 0, readCount, false);
+
+        if (carry) slots.settle(progress);
+        slots.refresh++;
+        memberCount = 0;
+        complete = false;
+    }
+
+    public void addUnits(UnitSnapshot units, int from, int to) {
+        ClusterSlots slots = this.slots;
+        ClusterBuffer base = slots.clusters;
+        float moveLimit = baseCell * moveThreshold;
+        if (to > member.length) growMembers(to);
+
+        for (int u = from; u < to; u++) {
+            int teamId = units.team[u], typeId = units.type[u];
+            float ux = units.x[u], uy = units.y[u], ur = units.rotation[u];
+
+            int k = readCount > 0 ? units.prevIndex[u] : -1;
+            if (k >= 0 && k < readCount) {
+                readSeen[k] = true;
+                int s = readMember[k];
+                float ax = readAnchorX[k], ay = readAnchorY[k], ar = readAnchorRotation[k];
+
+                int i = slots.index[s];
+                if (base.team[i] == teamId && base.type[i] == typeId && withinCell(ux, slots.cellX[s]) && withinCell(uy, slots.cellY[s])) {
+                    if (Math.abs(ux - ax) > moveLimit || Math.abs(uy - ay) > moveLimit || turned(ar, ur)) {
+                        slots.move(s, ax, ay, ar, ux, uy, ur);
+                        evaluated++;
+                        ax = ux;
+                        ay = uy;
+                        ar = ur;
+                    }
+                    setMember(u, s, ax, ay, ar);
+                    continue;
+                }
+
+                slots.remove(s, ax, ay, ar);
+                reassigned++;
+            }
+
+            evaluated++;
+            int s = slots.claim(teamId, typeId, slots.grid.cell(ux), slots.grid.cell(uy));
+            slots.add(s, units, u);
+            setMember(u, s, ux, uy, ur);
+        }
+        if (to > memberCount) memberCount = to;
+    }
+
+    public void finish() {
+        for (int k = 0; k < readCount; k++) {
+            if (readSeen[k]) continue;
+            slots.remove(readMember[k], readAnchorX[k], readAnchorY[k], readAnchorRotation[k]);
+            evaluated++;
+        }
+        readMember = null;
+        readAnchorX = readAnchorY = readAnchorRotation = null;
+        readCount = 0;
+
+        slots.finish();
+        slots.compact();
+
+        built = 1;
+        builtClusters = levels[0].size;
+        slotsCell = baseCell;
+        complete = true;
+    }
+
+    public int levelFor(float clusterWorld) {
+        if (clusterWorld <= baseCell) return 0;
+        int level = 31 - Integer.numberOfLeadingZeros((int) (clusterWorld / baseCell));
+        return Math.min(level, maxLevels - 1);
+    }
+
+    public float cellSize(int level) {
+        return baseCell * (1 << level);
+    }
+
+    public ClusterBuffer cut(float clusterWorld) {
+        return level(levelFor(clusterWorld));
+    }
+
+    // Like cut, but keeps the previously shown level until the zoom moves levelHysteresis past
+    // either of its edges, so clusters do not split and merge back while hovering at a boundary.
+    public ClusterBuffer cutStable(float clusterWorld) {
+        int level = levelFor(clusterWorld);
+        if (lastCutCell > 0f && lastCutCell != cellSize(level)) {
+            int previous = Math.round((float) (Math.log(lastCutCell / baseCell) / Math.log(2.0)));
+            if (previous >= 0 && previous < maxLevels && cellSize(previous) == lastCutCell) {
+                float lower = previous == 0 ? 0f : cellSize(previous) * (1f - levelHysteresis);
+                float upper = cellSize(previous + 1) * (1f + levelHysteresis);
+                if (clusterWorld >= lower && clusterWorld < upper) level = previous;
+            }
+        }
+        lastCutCell = cellSize(level);
+        return level(level);
+    }
+
+    public float shownCell() {
+        return lastCutCell;
+    }
+
+    // Units that left their cluster for another one in the last build.
+    public int reassignedUnits() {
+        return reassigned;
+    }
+
+    // Units whose cluster had to be updated in the last build: all of them without a previous
+    // pyramid, otherwise only the ones that appeared, disappeared, moved past the thresholds or
+    // changed cluster.
+    public int evaluatedUnits() {
+        return evaluated;
+    }
+
+    public ClusterBuffer level(int level) {
+        if (built == 0) return levels[0];
+        while (built <= level) buildLevel(built++);
+        return levels[level];
+    }
+
+    public int builtClusters() {
+        return builtClusters;
+    }
+
+    private void buildLevel(int level) {
+        ClusterBuffer children = levels[level - 1];
+        ClusterBuffer parents = levels[level];
+        if (level == 1) {
+            for (int j = 0; j < children.size; j++) {
+                int s = slots.slotAt[j];
+                setCell(0, j, slots.cellX[s], slots.cellY[s]);
+            }
+        }
+        int[] childX = cellX[level - 1], childY = cellY[level - 1];
+        parents.clear();
+        grid.reset(cellSize(level));
+
+        for (int j = 0; j < children.size; j++) {
+            int teamId = children.team[j], typeId = children.type[j];
+            int cx = childX[j] >> 1, cy = childY[j] >> 1;
+
+            int i = grid.head(teamId, typeId, cx, cy);
+            if (i == -1) {
+                i = parents.copy(children, j);
+                grid.insertCell(i, teamId, typeId, cx, cy);
+                setCell(level, i, cx, cy);
+            } else {
+                parents.absorb(i, children, j);
+                // A parent is named after its oldest base cluster, so its id lives as long as that one does.
+                parents.id[i] = Math.min(parents.id[i], children.id[j]);
+            }
+        }
+        builtClusters += parents.size;
+    }
+
+    private boolean withinCell(float v, int cell) {
+        float margin = baseCell * cellHysteresis;
+        float min = cell * baseCell;
+        return v >= min - margin && v < min + baseCell + margin;
+    }
+
+    private static boolean turned(float from, float to) {
+        float delta = Math.abs(to - from) % 360f;
+        return Math.min(delta, 360f - delta) > turnThreshold;
+    }
+
+    private void setMember(int u, int s, float x, float y, float r) {
+        member[u] = s;
+        anchorX[u] = x;
+        anchorY[u] = y;
+        anchorRotation[u] = r;
+    }
+
+    private void growMembers(int min) {
+        int cap = Math.max(min, member.length * 2);
+        member = Arrays.copyOf(member, cap);
+        anchorX = Arrays.copyOf(anchorX, cap);
+        anchorY = Arrays.copyOf(anchorY, cap);
+        anchorRotation = Arrays.copyOf(anchorRotation, cap);
+    }
+
+    private void setCell(int level, int i, int cx, int cy) {
+        if (i >= cellX[level].length) {
+            cellX[level] = Arrays.copyOf(cellX[level], Math.max(i + 1, cellX[level].length * 2));
+            cellY[level] = Arrays.copyOf(cellY[level], cellX[level].length);
+        }
+        cellX[level][i] = cx;
+        cellY[level][i] = cy;
+    }
+}
@@ -0,0 +1,230 @@
+package betterminimap.core;
+
+import java.util.Arrays;
+
+// The base-level clusters of a ClusterPyramid, kept from one refresh to the next. A slot is one
+// (team, type, cell) cluster; its state is the slot's entry in `clusters`, so a unit joining,
+// leaving or moving updates that entry in place and a refresh in which little moved rewrites
+// little. Emptied slots stay mapped to their cell until compact(), and entries stay where they
+// are until their slot empties.
+final class ClusterSlots {
+    final ClusterGrid grid = new ClusterGrid();
+    final ClusterBuffer clusters = new ClusterBuffer();
+
+    int size;
+    int refresh;
+
+    int[] cellX = new int[128];
+    int[] cellY = new int[128];
+    // The slot's entry in `clusters`, or -1, and the slot behind each entry.
+    int[] index = new int[128];
+    int[] slotAt = new int[128];
+    private int[] born = new int[128];
+
+    // Slots changed this refresh, and the ones changed last refresh, whose entries still need
+    // their previous state settled.
+    private int[] changedAt = new int[128];
+    private int[] changed = new int[64];
+    private int changedCount;
+    private int[] settling = new int[64];
+    private int settlingCount;
+
+    private int[] free = new int[64];
+    private int freeCount;
+    private int nextId;
+
+    // Ids keep counting across resets, so a cluster id is never reused within a pyramid's life.
+    void reset(float cellSize) {
+        grid.reset(cellSize);
+        clusters.clear();
+        size = 0;
+        freeCount = 0;
+        changedCount = 0;
+        settlingCount = 0;
+    }
+
+    void copyFrom(ClusterSlots other) {
+        if (index.length < other.size) grow(other.size);
+        int n = other.size;
+        System.arraycopy(other.cellX, 0, cellX, 0, n);
+        System.arraycopy(other.cellY, 0, cellY, 0, n);
+        System.arraycopy(other.index, 0, index, 0, n);
+        System.arraycopy(other.born, 0, born, 0, n);
+        System.arraycopy(other.changedAt, 0, changedAt, 0, n);
+        if (slotAt.length < other.clusters.size) slotAt = new int[other.slotAt.length];
+        System.arraycopy(other.slotAt, 0, slotAt, 0, other.clusters.size);
+        clusters.copyFrom(other.clusters);
+        size = n;
+        refresh = other.refresh;
+        nextId = Math.max(nextId, other.nextId);
+
+        if (settling.length < other.settlingCount) settling = new int[other.settling.length];
+        System.arraycopy(other.settling, 0, settling, 0, other.settlingCount);
+        settlingCount = other.settlingCount;
+        changedCount = 0;
+        if (free.length < other.freeCount) free = new int[other.free.length];
+        System.arraycopy(other.free, 0, free, 0, other.freeCount);
+        freeCount = other.freeCount;
+        grid.copyFrom(other.grid);
+    }
+
+    // Moves every entry's previous state to where it is drawn at `progress` of the refresh
+    // before, so this refresh interpolates from there. At 1 that only matters for entries changed
+    // last refresh; the others already sit still.
+    void settle(float progress) {
+        ClusterBuffer clusters = this.clusters;
+        if (progress < 1f) {
+            for (int i = 0; i < clusters.size; i++) clusters.advance(i, progress);
+        } else {
+            for (int k = 0; k < settlingCount; k++) {
+                int i = index[settling[k]];
+                if (i >= 0) clusters.advance(i, 1f);
+            }
+        }
+        settlingCount = 0;
+    }
+
+    // The slot for a unit at (cx, cy), creating it, or reviving an emptied one under a new id.
+    int claim(int unitTeam, int unitType, int cx, int cy) {
+        int s = grid.head(unitTeam, unitType, cx, cy);
+        if (s >= 0) {
+            int i = index[s];
+            if (i < 0) {
+                start(s, unitTeam, unitType);
+            } else if (clusters.count[i] == 0 && born[s] != refresh) {
+                born[s] = refresh;
+                clusters.id[i] = nextId++;
+            }
+            return s;
+        }
+
+        if (freeCount > 0) {
+            s = free[--freeCount];
+        } else {
+            if (size == index.length) grow(size + 1);
+            s = size++;
+        }
+        cellX[s] = cx;
+        cellY[s] = cy;
+        start(s, unitTeam, unitType);
+        grid.insertCell(s, unitTeam, unitType, cx, cy);
+        return s;
+    }
+
+    // A slot born this refresh takes its members' previous state too; an older one keeps the
+    // previous state settle() gave it.
+    void add(int s, UnitSnapshot units, int unit) {
+        touch(s);
+        ClusterBuffer c = clusters;
+        int i = index[s];
+        if (born[s] == refresh) {
+            if (c.count[i] == 0) {
+                c.set(i, units, unit);
+            } else {
+                c.merge(i, units, unit);
+            }
+            return;
+        }
+
+        float r = units.rotation[unit];
+        int n = ++c.count[i];
+        c.x[i] += (units.x[unit] - c.x[i]) / n;
+        c.y[i] += (units.y[unit] - c.y[i]) / n;
+        c.dirx[i] += MarkerMath.cosDeg(r);
+        c.diry[i] += MarkerMath.sinDeg(r);
+        c.fallbackRotation[i] = r;
+    }
+
+    void remove(int s, float x, float y, float r) {
+        touch(s);
+        ClusterBuffer c = clusters;
+        int i = index[s];
+        int n = --c.count[i];
+        if (n == 0) return;
+        c.x[i] += (c.x[i] - x) / n;
+        c.y[i] += (c.y[i] - y) / n;
+        c.dirx[i] -= MarkerMath.cosDeg(r);
+        c.diry[i] -= MarkerMath.sinDeg(r);
+    }
+
+    void move(int s, float fromX, float fromY, float fromR, float x, float y, float r) {
+        touch(s);
+        ClusterBuffer c = clusters;
+        int i = index[s];
+        int n = c.count[i];
+        c.x[i] += (x - fromX) / n;
+        c.y[i] += (y - fromY) / n;
+        c.dirx[i] += MarkerMath.cosDeg(r) - MarkerMath.cosDeg(fromR);
+        c.diry[i] += MarkerMath.sinDeg(r) - MarkerMath.sinDeg(fromR);
+        c.fallbackRotation[i] = r;
+    }
+
+    // Drops the entries of slots emptied this refresh; the changed ones settle next refresh.
+    void finish() {
+        for (int k = 0; k < changedCount; k++) {
+            int s = changed[k];
+            int i = index[s];
+            if (i < 0 || clusters.count[i] > 0) continue;
+
+            int last = clusters.size - 1;
+            clusters.removeSwap(i);
+            index[s] = -1;
+            if (i == last) continue;
+            slotAt[i] = slotAt[last];
+            index[slotAt[i]] = i;
+        }
+
+        int[] t = settling;
+        settling = changed;
+        settlingCount = changedCount;
+        changed = t;
+        changedCount = 0;
+    }
+
+    // Frees emptied slots once they outnumber the live ones, so a moving army does not leave
+    // an ever-growing trail of empty cells in the grid.
+    void compact() {
+        int live = clusters.size;
+        if (size - freeCount - live <= live + 64) return;
+
+        grid.reset(grid.cellSize());
+        freeCount = 0;
+        for (int s = 0; s < size; s++) {
+            int i = index[s];
+            if (i >= 0) {
+                grid.insertCell(s, clusters.team[i], clusters.type[i], cellX[s], cellY[s]);
+            } else {
+                if (freeCount == free.length) free = Arrays.copyOf(free, free.length * 2);
+                free[freeCount++] = s;
+            }
+        }
+    }
+
+    private void start(int s, int unitTeam, int unitType) {
+        int i = clusters.append();
+        if (i == slotAt.length) slotAt = Arrays.copyOf(slotAt, i * 2);
+        slotAt[i] = s;
+        index[s] = i;
+        born[s] = refresh;
+        clusters.count[i] = 0;
+        clusters.team[i] = unitTeam;
+        clusters.type[i] = unitType;
+        clusters.id[i] = nextId++;
+    }
+
+    private void touch(int s) {
+        if (changedAt[s] == refresh) return;
+        changedAt[s] = refresh;
+        if (changedCount == changed.length) changed = Arrays.copyOf(changed, changedCount * 2);
+        changed[changedCount++] = s;
+    }
+
+    private void grow(int min) {
+        int cap = Math.max(min, index.length * 2);
+        cellX = Arrays.copyOf(cellX, cap);
+        cellY = Arrays.copyOf(cellY, cap);
+        index = Arrays.copyOf(index, cap);
+        born = Arrays.copyOf(born, cap);
+        changedAt = Arrays.copyOf(changedAt, cap);
+    }
+}
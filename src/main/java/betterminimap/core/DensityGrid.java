@@ -0,0 +1,225 @@
+package betterminimap.core;
+
+import java.util.Arrays;
+
+public final class DensityGrid {
+    public static final int maxTeams = 256;
+    public static final int saturationCount = 48;
+
+    private final int[][] counts = new int[maxTeams][];
+    private final int[] activeTeams = new int[maxTeams];
+    private final IntIndexMap trackedById = new IntIndexMap();
+
+    private int activeTeamCount;
+    private int width;
+    private int height;
+    private float originX;
+    private float originY;
+    private float cellWorld = 1f;
+    private int units;
+
+    private int[] total = new int[0];
+    private int[] dirty = new int[0];
+    private boolean[] dirtyMark = new boolean[0];
+    private int dirtyCount;
+
+    private int trackedCount;
+    private int[] trackedId = new int[256];
+    private int[] trackedCell = new int[256];
+    private int[] trackedTeam = new int[256];
+    private boolean[] trackedSeen = new boolean[256];
+
+    private int nextCount;
+    private int[] nextId = new int[256];
+    private int[] nextCell = new int[256];
+    private int[] nextTeam = new int[256];
+
+    public void reset(float originX, float originY, float worldWidth, float worldHeight, float cellWorld) {
+        this.originX = originX;
+        this.originY = originY;
+        this.cellWorld = cellWorld;
+        width = Math.max(1, (int) Math.ceil(worldWidth / cellWorld));
+        height = Math.max(1, (int) Math.ceil(worldHeight / cellWorld));
+
+        int cells = width * height;
+        total = new int[cells];
+        dirty = new int[cells];
+        dirtyMark = new boolean[cells];
+        dirtyCount = 0;
+        for (int i = 0; i < activeTeamCount; i++) counts[activeTeams[i]] = null;
+        activeTeamCount = 0;
+        trackedById.clear();
+        trackedCount = 0;
+        units = 0;
+        markAllDirty();
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    public float cellWorld() {
+        return cellWorld;
+    }
+
+    public float originX() {
+        return originX;
+    }
+
+    public float originY() {
+        return originY;
+    }
+
+    public int units() {
+        return units;
+    }
+
+    public int dirtyCount() {
+        return dirtyCount;
+    }
+
+    public int dirtyCell(int i) {
+        return dirty[i];
+    }
+
+    public void clearDirty() {
+        for (int i = 0; i < dirtyCount; i++) dirtyMark[dirty[i]] = false;
+        dirtyCount = 0;
+    }
+
+    public void markAllDirty() {
+        for (int cell = 0; cell < total.length; cell++) markDirty(cell);
+    }
+
+    // Units that stay in their cell cost a hash lookup; only cells that gain or lose
+    // a unit are touched and reported as dirty.
+    public void update(UnitSnapshot all, boolean[] typeEnabled, int playerTeam, boolean showEnemy, boolean showFriendly) {
+        update(all, typeEnabled, playerTeam, showEnemy, showFriendly, null);
+    }
+
+    public void update(UnitSnapshot all, boolean[] typeEnabled, int playerTeam, boolean showEnemy, boolean showFriendly, VisibilityMask fog) {
+        Arrays.fill(trackedSeen, 0, trackedCount, false);
+        nextCount = 0;
+        boolean fogged = fog != null && fog.enabled();
+
+        for (int i = 0; i < all.size; i++) {
+            if (fogged && all.team[i] != playerTeam && !fog.unitVisible(all.x[i], all.y[i])) continue;
+            int type = all.type[i];
+            if (type < 0 || type >= typeEnabled.length || !typeEnabled[type]) continue;
+            int team = all.team[i];
+            if (team < 0 || team >= maxTeams) continue;
+            boolean enemy = team != playerTeam;
+            if (enemy && !showEnemy) continue;
+            if (!enemy && !showFriendly) continue;
+
+            int cell = cellOf(all.x[i], all.y[i]);
+            if (cell < 0) continue;
+
+            int id = all.id[i];
+            int tracked = trackedById.get(id, -1);
+            if (tracked >= 0 && !trackedSeen[tracked]) {
+                trackedSeen[tracked] = true;
+                if (trackedCell[tracked] != cell || trackedTeam[tracked] != team) {
+                    remove(trackedTeam[tracked], trackedCell[tracked]);
+                    add(team, cell);
+                }
+            } else {
+                add(team, cell);
+            }
+            track(id, cell, team);
+        }
+
+        for (int i = 0; i < trackedCount; i++) {
+            if (!trackedSeen[i]) remove(trackedTeam[i], trackedCell[i]);
+        }
+
+        int[] swap = trackedId;
+        trackedId = nextId;
+        nextId = swap;
+        swap = trackedCell;
+        trackedCell = nextCell;
+        nextCell = swap;
+        swap = trackedTeam;
+        trackedTeam = nextTeam;
+        nextTeam = swap;
+        trackedCount = nextCount;
+        if (trackedSeen.length < trackedId.length) trackedSeen = new boolean[trackedId.length];
+
+        trackedById.clear();
+        for (int i = 0; i < trackedCount; i++) trackedById.put(trackedId[i], i);
+    }
+
+    public int count(int cell) {
+        return total[cell];
+    }
+
+    // Colour of the team with the most units in the cell; alpha grows logarithmically with the total.
+    public int color(int cell, int[] teamRgba) {
+        int sum = total[cell];
+        if (sum <= 0) return 0;
+
+        int bestTeam = activeTeams[0];
+        int best = -1;
+        for (int i = 0; i < activeTeamCount; i++) {
+            int team = activeTeams[i];
+            int n = counts[team][cell];
+            if (n > best) {
+                best = n;
+                bestTeam = team;
+            }
+        }
+
+        float density = (float) (Math.log(1.0 + sum) / Math.log(1.0 + saturationCount));
+        int alpha = (int) (255f * Math.min(1f, 0.3f + 0.7f * density));
+        return (teamRgba[bestTeam] & 0xffffff00) | alpha;
+    }
+
+    private int cellOf(float x, float y) {
+        int cx = (int) ((x - originX) / cellWorld);
+        int cy = (int) ((y - originY) / cellWorld);
+        if (x < originX || y < originY || cx >= width || cy >= height) return -1;
+        return cx + cy * width;
+    }
+
+    private void track(int id, int cell, int team) {
+        if (nextCount == nextId.length) {
+            int size = nextCount * 2;
+            nextId = Arrays.copyOf(nextId, size);
+            nextCell = Arrays.copyOf(nextCell, size);
+            nextTeam = Arrays.copyOf(nextTeam, size);
+        }
+        nextId[nextCount] = id;
+        nextCell[nextCount] = cell;
+        nextTeam[nextCount] = team;
+        nextCount++;
+    }
+
+    private void add(int team, int cell) {
+        int[] teamCounts = counts[team];
+        if (teamCounts == null) {
+            teamCounts = counts[team] = new int[total.length];
+            activeTeams[activeTeamCount++] = team;
+        }
+        teamCounts[cell]++;
+        total[cell]++;
+        units++;
+        markDirty(cell);
+    }
+
+    private void remove(int team, int cell) {
+        counts[team][cell]--;
+        total[cell]--;
+        units--;
+        markDirty(cell);
+    }
+
+    private void markDirty(int cell) {
+        if (dirtyMark[cell]) return;
+        dirtyMark[cell] = true;
+        dirty[dirtyCount++] = cell;
+    }
+}
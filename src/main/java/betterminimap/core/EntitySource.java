@@ -0,0 +1,13 @@
+package betterminimap.core;
+
+public interface EntitySource {
+    int playerTeam();
+
+    void collectUnits(ViewRect rect, OverlaySettings settings, UnitSnapshot out);
+
+    void collectBuildings(ViewRect rect, OverlaySettings settings, BuildingSnapshot out);
+
+    default VisibilityMask visibility() {
+        return null;
+    }
+}
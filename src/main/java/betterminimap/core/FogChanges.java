@@ -0,0 +1,147 @@
+package betterminimap.core;
+
+import java.util.Arrays;
+
+// Which chunks of a team's fog can have changed since the last pass. The game only lights tiles
+// inside the vision circles of the team's units and fog-radius buildings, so a tile can only
+// change under a circle that appeared, disappeared, moved to another tile or changed radius; the
+// chunks under those circles, before and after, are all a pass has to re-read. The game computes
+// fog on its own thread and can trail a move by a few frames, so a chunk stays dirty for
+// `settlePasses` more passes after it was last marked.
+public final class FogChanges {
+    public static final int chunkTiles = 16;
+
+    private final int settlePasses;
+    private final IntIndexMap previousById = new IntIndexMap();
+
+    private int chunksX;
+    private int chunksY;
+    private int pass;
+    private int[] dirtyUntil = new int[0];
+    private int[] dirty = new int[64];
+    private int dirtyCount;
+
+    private Sources sources = new Sources();
+    private Sources previous = new Sources();
+    private boolean[] previousSeen = new boolean[64];
+
+    public FogChanges(int settlePasses) {
+        this.settlePasses = settlePasses;
+    }
+
+    // Forgets every source and marks the whole map, so the next pass reads all of it.
+    public void reset(int width, int height) {
+        chunksX = (Math.max(0, width) + chunkTiles - 1) / chunkTiles;
+        chunksY = (Math.max(0, height) + chunkTiles - 1) / chunkTiles;
+        if (dirtyUntil.length < chunksX * chunksY) dirtyUntil = new int[chunksX * chunksY];
+        Arrays.fill(dirtyUntil, 0, chunksX * chunksY, -1);
+        dirtyCount = 0;
+        sources.count = 0;
+        previous.count = 0;
+        markAll();
+    }
+
+    public void markAll() {
+        for (int cy = 0; cy < chunksY; cy++) {
+            for (int cx = 0; cx < chunksX; cx++) markChunk(cx, cy);
+        }
+    }
+
+    public void mark(int tx, int ty, int radius) {
+        int minX = Math.max(0, (tx - radius) / chunkTiles), maxX = Math.min(chunksX - 1, (tx + radius) / chunkTiles);
+        int minY = Math.max(0, (ty - radius) / chunkTiles), maxY = Math.min(chunksY - 1, (ty + radius) / chunkTiles);
+        if (tx + radius < 0 || ty + radius < 0) return;
+        for (int cy = minY; cy <= maxY; cy++) {
+            for (int cx = minX; cx <= maxX; cx++) markChunk(cx, cy);
+        }
+    }
+
+    // Starts a pass; the team's current sources follow through source(), then finish().
+    public void begin() {
+        pass++;
+        Sources s = previous;
+        previous = sources;
+        sources = s;
+        sources.count = 0;
+
+        previousById.clear();
+        for (int i = 0; i < previous.count; i++) previousById.put(previous.id[i], i);
+        if (previousSeen.length < previous.count) previousSeen = new boolean[Math.max(previous.count, previousSeen.length * 2)];
+        Arrays.fill(previousSeen, 0, previous.count, false);
+    }
+
+    public void source(int id, int tx, int ty, int radius) {
+        sources.add(id, tx, ty, radius);
+
+        int k = previousById.get(id, -1);
+        if (k >= 0 && !previousSeen[k]) {
+            previousSeen[k] = true;
+            if (previous.x[k] == tx && previous.y[k] == ty && previous.radius[k] == radius) return;
+            mark(previous.x[k], previous.y[k], previous.radius[k]);
+        }
+        mark(tx, ty, radius);
+    }
+
+    // Marks the circles of sources that are gone, and drops chunks that have settled.
+    public void finish() {
+        for (int k = 0; k < previous.count; k++) {
+            if (!previousSeen[k]) mark(previous.x[k], previous.y[k], previous.radius[k]);
+        }
+
+        int kept = 0;
+        for (int i = 0; i < dirtyCount; i++) {
+            int chunk = dirty[i];
+            if (dirtyUntil[chunk] >= pass) {
+                dirty[kept++] = chunk;
+            } else {
+                dirtyUntil[chunk] = -1;
+            }
+        }
+        dirtyCount = kept;
+    }
+
+    // Chunks to re-read this pass, as indices into a chunksX-wide grid.
+    public int dirtyCount() {
+        return dirtyCount;
+    }
+
+    public int dirtyChunk(int i) {
+        return dirty[i];
+    }
+
+    public int chunksX() {
+        return chunksX;
+    }
+
+    private void markChunk(int cx, int cy) {
+        int chunk = cx + cy * chunksX;
+        if (dirtyUntil[chunk] < 0) {
+            if (dirtyCount == dirty.length) dirty = Arrays.copyOf(dirty, dirtyCount * 2);
+            dirty[dirtyCount++] = chunk;
+        }
+        dirtyUntil[chunk] = pass + settlePasses;
+    }
+
+    private static final class Sources {
+        int count;
+        int[] id = new int[64];
+        int[] x = new int[64];
+        int[] y = new int[64];
+        int[] radius = new int[64];
+
+        void add(int sourceId, int tx, int ty, int r) {
+            if (count == id.length) {
+                int cap = count * 2;
+                id = Arrays.copyOf(id, cap);
+                x = Arrays.copyOf(x, cap);
+                y = Arrays.copyOf(y, cap);
+                radius = Arrays.copyOf(radius, cap);
+            }
+            id[count] = sourceId;
+            x[count] = tx;
+            y[count] = ty;
+            radius[count] = r;
+            count++;
+        }
+    }
+}
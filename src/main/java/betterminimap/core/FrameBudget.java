@@ -0,0 +1,19 @@
+package betterminimap.core;
+
+public final class FrameBudget {
+    private long start;
+    private long deadline;
+
+    public void begin(long budgetNs) {
+        start = System.nanoTime();
+        deadline = start + budgetNs;
+    }
+
+    public boolean expired() {
+        return System.nanoTime() >= deadline;
+    }
+
+    public long elapsed() {
+        return System.nanoTime() - start;
+    }
+}
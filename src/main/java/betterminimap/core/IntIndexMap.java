@@ -0,0 +1,64 @@
+package betterminimap.core;
+
+import java.util.Arrays;
+
+public final class IntIndexMap {
+    private int[] keys = new int[512];
+    private int[] values = new int[512];
+    private boolean[] used = new boolean[512];
+    private int mask = 511;
+    private int size;
+
+    public void clear() {
+        if (size == 0) return;
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    public void put(int key, int value) {
+        if ((size + 1) * 2 > keys.length) grow();
+
+        int slot = hash(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        used[slot] = true;
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+    }
+
+    public int get(int key, int defaultValue) {
+        int slot = hash(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return defaultValue;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        used = new boolean[oldKeys.length * 2];
+        mask = keys.length - 1;
+        size = 0;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,91 @@
+package betterminimap.core;
+
+import java.util.Arrays;
+
+public final class MarkerBudget {
+    public static final int tierFull = 0;
+    public static final int tierIcon = 1;
+    public static final int tierDot = 2;
+
+    public static final float iconOnlyPx = 7f;
+    public static final float dotPx = 3.5f;
+    public static final int iconOnlyClusters = 1500;
+    public static final int dotClusters = 6000;
+
+    private static final int countBuckets = 32;
+    private static final int bucketCount = countBuckets * 2;
+
+    private final int[] bucketStart = new int[bucketCount + 1];
+    private int[] bucket = new int[128];
+    private int[] order = new int[128];
+    private int size;
+
+    public static int tier(float screenPx, int clusters) {
+        if (screenPx < dotPx || clusters > dotClusters) return tierDot;
+        if (screenPx < iconOnlyPx || clusters > iconOnlyClusters) return tierIcon;
+        return tierFull;
+    }
+
+    public static float screenSizePx(int count, float unitSizePx) {
+        return unitSizePx * MarkerMath.clusterSizeMul(count);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(int i) {
+        return order[i];
+    }
+
+    // Picks at most `budget` clusters inside `cull` (null keeps all), enemies before friends and
+    // larger clusters before smaller ones. Buckets by log2(count) keep this linear; ties keep buffer order.
+    public int select(ClusterBuffer clusters, int playerTeam, int budget, ViewRect cull) {
+        int n = clusters.size;
+        if (order.length < n) {
+            order = new int[Math.max(n, order.length * 2)];
+            bucket = new int[order.length];
+        }
+
+        Arrays.fill(bucketStart, 0);
+        int accepted = 0;
+        for (int i = 0; i < n; i++) {
+            int count = clusters.count[i];
+            int b = count <= 0 || (cull != null && !cull.contains(clusters.x[i], clusters.y[i])) ? -1 : priority(count, clusters.team[i] != playerTeam);
+            bucket[i] = b;
+            if (b < 0) continue;
+            bucketStart[b + 1]++;
+            accepted++;
+        }
+
+        if (accepted <= budget) {
+            int slot = 0;
+            for (int i = 0; i < n; i++) {
+                if (bucket[i] >= 0) order[slot++] = i;
+            }
+            return size = slot;
+        }
+
+        // Highest priority first: turn the histogram into start offsets walking down.
+        int offset = 0;
+        for (int b = bucketCount - 1; b >= 0; b--) {
+            int amount = bucketStart[b + 1];
+            bucketStart[b + 1] = offset;
+            offset += amount;
+        }
+
+        int limit = Math.min(budget, offset);
+        for (int i = 0; i < n; i++) {
+            int b = bucket[i];
+            if (b < 0) continue;
+            int slot = bucketStart[b + 1]++;
+            if (slot < limit) order[slot] = i;
+        }
+        return size = limit;
+    }
+
+    private static int priority(int count, boolean enemy) {
+        int magnitude = Math.min(countBuckets - 1, 31 - Integer.numberOfLeadingZeros(count));
+        return enemy ? countBuckets + magnitude : magnitude;
+    }
+}
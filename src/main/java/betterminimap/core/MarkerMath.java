@@ -0,0 +1,55 @@
+package betterminimap.core;
+
+public final class MarkerMath {
+    private static final float radToDeg = (float) (180.0 / Math.PI);
+
+    private static final int sinBits = 14;
+    private static final int sinMask = ~(-1 << sinBits);
+    private static final float degToIndex = (1 << sinBits) / 360f;
+    private static final float[] sinTable = new float[1 << sinBits];
+
+    static {
+        for (int i = 0; i < sinTable.length; i++) {
+            sinTable[i] = (float) Math.sin((i + 0.5f) / sinTable.length * Math.PI * 2.0);
+        }
+    }
+
+    private MarkerMath() {
+    }
+
+    public static float snapHalfTile(float v, float tilesize) {
+        float step = tilesize / 2f;
+        return Math.round(v / step) * step;
+    }
+
+    public static float buildingSize(int blockSize, float tilesize, float buildingScale) {
+        return Math.max(tilesize, blockSize * tilesize) * buildingScale;
+    }
+
+    public static float clusterSizeMul(int count) {
+        if (count <= 1) return 1f;
+        return Math.min(2.8f, Math.max(1f, 1f + 0.22f * (float) Math.sqrt(count - 1f)));
+    }
+
+    public static float cosDeg(float degrees) {
+        return sinTable[(int) ((degrees + 90f) * degToIndex) & sinMask];
+    }
+
+    public static float sinDeg(float degrees) {
+        return sinTable[(int) (degrees * degToIndex) & sinMask];
+    }
+
+    public static float angle(float x, float y) {
+        float result = (float) Math.atan2(y, x) * radToDeg;
+        return result < 0f ? result + 360f : result;
+    }
+
+    public static float lerp(float from, float to, float progress) {
+        return from + (to - from) * progress;
+    }
+
+    public static float lerpAngle(float fromDeg, float toDeg, float progress) {
+        float delta = ((toDeg - fromDeg) % 360f + 540f) % 360f - 180f;
+        return fromDeg + delta * progress;
+    }
+}
@@ -0,0 +1,118 @@
+package betterminimap.core;
+
+public final class OverlayEngine {
+    public static final float tilesize = 8f;
+    public static final float minimapBaseSize = 16f;
+    public static final float baseClusterCell = tilesize / 2f;
+    public static final float zoomInHeadroom = 8f;
+
+    private final UnitSnapshot candidates = new UnitSnapshot();
+    private final BuildingSnapshot buildingCandidates = new BuildingSnapshot();
+    private final BuildingSnapshot buildings = new BuildingSnapshot();
+    private final ClusterPyramid pyramid = new ClusterPyramid();
+    private final IntIndexMap previousIndex = new IntIndexMap();
+    private final ViewRect view = new ViewRect();
+
+    private UnitSnapshot units = new UnitSnapshot();
+    private UnitSnapshot spare = new UnitSnapshot();
+    private int revision;
+
+    public static ViewRect computeViewRect(Viewport viewport, ViewRect out) {
+        float sz = minimapBaseSize * viewport.zoom();
+        float dx = viewport.cameraX() / tilesize;
+        float dy = viewport.cameraY() / tilesize;
+        dx = Math.max(Math.min(dx, viewport.worldWidth() - sz), sz);
+        dy = Math.max(Math.min(dy, viewport.worldHeight() - sz), sz);
+        return out.set((dx - sz) * tilesize, (dy - sz) * tilesize, sz * 2f * tilesize, sz * 2f * tilesize);
+    }
+
+    public static float minimapScale(ViewRect view, float widthPx, float heightPx) {
+        return Math.min(widthPx / view.width, heightPx / view.height);
+    }
+
+    public static float clusterWorld(float unitClusterPx, float minimapScale) {
+        return Math.max(0.1f, unitClusterPx / Math.max(0.0001f, minimapScale));
+    }
+
+    public static float clusterBaseCell(float clusterWorld) {
+        float cell = baseClusterCell;
+        while (cell * 2f * zoomInHeadroom <= clusterWorld) cell *= 2f;
+        return cell;
+    }
+
+    public static float unitMarkerSize(int count, float unitSizePx, float invScale) {
+        return unitSizePx * invScale * MarkerMath.clusterSizeMul(count);
+    }
+
+    public static float buildingMarkerSize(int blockSize, float buildingScale) {
+        return MarkerMath.buildingSize(blockSize, tilesize, buildingScale);
+    }
+
+    public ViewRect refresh(EntitySource source, OverlaySettings settings, Viewport viewport, float progress, float clusterWorld) {
+        long started = OverlayProfiler.start();
+        computeViewRect(viewport, view);
+        int playerTeam = source.playerTeam();
+
+        UnitSnapshot next = spare;
+        next.clear();
+        if (settings.enabled() && settings.unitsEnabled()) {
+            candidates.clear();
+            source.collectUnits(view, settings, candidates);
+            UnitFilter.filter(candidates, 0, candidates.size, next, settings, playerTeam, view, source.visibility());
+            OverlayProfiler.count(OverlayProfiler.unitsScanned, candidates.size);
+            OverlayProfiler.count(OverlayProfiler.unitsAccepted, next.size);
+        }
+        next.linkPrevious(units, progress, previousIndex);
+        spare = units;
+        units = next;
+
+        buildings.clear();
+        if (settings.enabled() && settings.buildingsEnabled()) {
+            buildingCandidates.clear();
+            source.collectBuildings(view, settings, buildingCandidates);
+            BuildingFilter.filter(buildingCandidates, buildings, settings, playerTeam, view, source.visibility());
+            OverlayProfiler.count(OverlayProfiler.buildingsScanned, buildingCandidates.size);
+            OverlayProfiler.count(OverlayProfiler.buildingsAccepted, buildings.size);
+        }
+
+        revision++;
+        OverlayProfiler.stop(OverlayProfiler.phaseRefresh, started);
+
+        started = OverlayProfiler.start();
+        pyramid.begin(clusterBaseCell(clusterWorld), pyramid, progress);
+        pyramid.addUnits(units, 0, units.size);
+        pyramid.finish();
+        OverlayProfiler.count(OverlayProfiler.clustersProduced, pyramid.builtClusters());
+        OverlayProfiler.stop(OverlayProfiler.phaseCluster, started);
+        return view;
+    }
+
+    public ClusterBuffer cluster(float clusterWorld) {
+        long started = OverlayProfiler.start();
+        int before = pyramid.builtClusters();
+        ClusterBuffer clusters = pyramid.cutStable(clusterWorld);
+        OverlayProfiler.count(OverlayProfiler.clustersProduced, pyramid.builtClusters() - before);
+        OverlayProfiler.stop(OverlayProfiler.phaseCluster, started);
+        return clusters;
+    }
+
+    public ViewRect view() {
+        return view;
+    }
+
+    public UnitSnapshot units() {
+        return units;
+    }
+
+    public BuildingSnapshot buildings() {
+        return buildings;
+    }
+
+    public ClusterPyramid pyramid() {
+        return pyramid;
+    }
+
+    public int revision() {
+        return revision;
+    }
+}
@@ -0,0 +1,166 @@
+package betterminimap.core;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+public final class OverlayProfiler {
+    public static final int phaseRefresh = 0;
+    public static final int phaseCluster = 1;
+    public static final int phaseDrawMarkers = 2;
+    public static final int phaseOverlayDraw = 3;
+    public static final int phaseCount = 4;
+
+    public static final int unitsScanned = 0;
+    public static final int unitsAccepted = 1;
+    public static final int buildingsScanned = 2;
+    public static final int buildingsAccepted = 3;
+    public static final int clustersProduced = 4;
+    public static final int drawCalls = 5;
+    public static final int textureSwitches = 6;
+    public static final int overlayCacheHits = 7;
+    public static final int counterCount = 8;
+
+    public static final int historySize = 600;
+
+    private static final String[] phaseNames = {"refresh", "cluster", "drawMarkers", "overlayDraw"};
+    private static final String[] counterNames = {"unitsScanned", "unitsAccepted", "buildingsScanned", "buildingsAccepted", "clusters", "drawCalls", "textureSwitches", "overlayCacheHits"};
+
+    private static final long[] frameNs = new long[phaseCount];
+    private static final long[] frameCounters = new long[counterCount];
+    private static final long[][] historyNs = new long[phaseCount][historySize];
+    private static final long[][] historyCounters = new long[counterCount][historySize];
+    private static final long[] historyFrame = new long[historySize];
+    private static final long[] sortScratch = new long[historySize];
+
+    private static boolean enabled;
+    private static int head;
+    private static int filled;
+    private static long frame;
+
+    private OverlayProfiler() {
+    }
+
+    public static boolean enabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean value) {
+        if (value == enabled) return;
+        enabled = value;
+        reset();
+    }
+
+    public static void reset() {
+        Arrays.fill(frameNs, 0L);
+        Arrays.fill(frameCounters, 0L);
+        head = filled = 0;
+        frame = 0L;
+    }
+
+    public static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public static void stop(int phase, long started) {
+        if (started != 0L) frameNs[phase] += System.nanoTime() - started;
+    }
+
+    public static void count(int counter, int amount) {
+        if (enabled) frameCounters[counter] += amount;
+    }
+
+    public static void endFrame() {
+        if (!enabled) return;
+
+        for (int i = 0; i < phaseCount; i++) {
+            historyNs[i][head] = frameNs[i];
+            frameNs[i] = 0L;
+        }
+        for (int i = 0; i < counterCount; i++) {
+            historyCounters[i][head] = frameCounters[i];
+            frameCounters[i] = 0L;
+        }
+        historyFrame[head] = frame++;
+        head = (head + 1) % historySize;
+        if (filled < historySize) filled++;
+    }
+
+    public static int frames() {
+        return filled;
+    }
+
+    public static double averageMs(int phase) {
+        return average(historyNs[phase]) / 1e6;
+    }
+
+    public static double percentileMs(int phase, float percentile) {
+        if (filled == 0) return 0.0;
+
+        System.arraycopy(historyNs[phase], 0, sortScratch, 0, filled);
+        Arrays.sort(sortScratch, 0, filled);
+        int index = Math.min(filled - 1, (int) (filled * percentile));
+        return sortScratch[index] / 1e6;
+    }
+
+    public static double averageCounter(int counter) {
+        return average(historyCounters[counter]);
+    }
+
+    public static String phaseName(int phase) {
+        return phaseNames[phase];
+    }
+
+    public static String counterName(int counter) {
+        return counterNames[counter];
+    }
+
+    public static void writeCsv(StringBuilder out) {
+        out.append("frame");
+        for (String name : phaseNames) out.append(',').append(name).append("Ns");
+        for (String name : counterNames) out.append(',').append(name);
+        out.append('\n');
+
+        for (int n = 0; n < filled; n++) {
+            int i = slot(n);
+            out.append(historyFrame[i]);
+            for (int p = 0; p < phaseCount; p++) out.append(',').append(historyNs[p][i]);
+            for (int c = 0; c < counterCount; c++) out.append(',').append(historyCounters[c][i]);
+            out.append('\n');
+        }
+    }
+
+    public static void writeJson(StringBuilder out) {
+        out.append("{\"frames\":").append(filled).append(",\"phases\":{");
+        for (int p = 0; p < phaseCount; p++) {
+            if (p > 0) out.append(',');
+            out.append('"').append(phaseNames[p]).append("\":{")
+                .append("\"avgMs\":").append(format(averageMs(p)))
+                .append(",\"p50Ms\":").append(format(percentileMs(p, 0.50f)))
+                .append(",\"p95Ms\":").append(format(percentileMs(p, 0.95f)))
+                .append(",\"p99Ms\":").append(format(percentileMs(p, 0.99f)))
+                .append('}');
+        }
+        out.append("},\"counters\":{");
+        for (int c = 0; c < counterCount; c++) {
+            if (c > 0) out.append(',');
+            out.append('"').append(counterNames[c]).append("\":").append(format(averageCounter(c)));
+        }
+        out.append("}}\n");
+    }
+
+    private static double average(long[] values) {
+        if (filled == 0) return 0.0;
+
+        long sum = 0L;
+        for (int i = 0; i < filled; i++) sum += values[i];
+        return sum / (double) filled;
+    }
+
+    private static int slot(int n) {
+        return filled < historySize ? n : (head + n) % historySize;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+}
@@ -0,0 +1,29 @@
+package betterminimap.core;
+
+public interface OverlaySettings {
+    int version();
+
+    boolean enabled();
+
+    boolean unitsEnabled();
+
+    boolean buildingsEnabled();
+
+    boolean showFriendlyUnits();
+
+    boolean showEnemyUnits();
+
+    boolean showFriendlyBuildings();
+
+    boolean showEnemyBuildings();
+
+    float unitSizePx();
+
+    float unitClusterPx();
+
+    float buildingScale();
+
+    boolean[] unitFilter();
+
+    boolean[] blockFilter();
+}
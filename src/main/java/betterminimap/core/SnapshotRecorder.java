@@ -0,0 +1,87 @@
+package betterminimap.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public final class SnapshotRecorder {
+    public static final int magic = 0x424d4d52;
+    public static final int formatVersion = 1;
+
+    static final int fileHeaderBytes = 8;
+    static final int frameHeaderBytes = 4 * 13;
+    static final int unitBytes = 17;
+    static final int buildingBytes = 12;
+
+    private final FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private long bytesWritten;
+    private int frames;
+
+    public SnapshotRecorder(File file) throws IOException {
+        channel = new FileOutputStream(file).getChannel();
+        buffer.clear();
+        buffer.putInt(magic).putInt(formatVersion);
+        flush();
+    }
+
+    public int frames() {
+        return frames;
+    }
+
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    // One frame: a byte length, a fixed header, then 17 bytes per unit and 12 per building.
+    // Rotation is stored as a 16-bit angle and building centres in half tiles.
+    public void write(ViewRect view, Viewport viewport, int playerTeam, UnitSnapshot units, BuildingSnapshot buildings) throws IOException {
+        int body = frameHeaderBytes + units.size * unitBytes + buildings.size * buildingBytes;
+        if (buffer.capacity() < body + 4) buffer = ByteBuffer.allocate(Math.max(body + 4, buffer.capacity() * 2));
+
+        buffer.clear();
+        buffer.putInt(body);
+        buffer.putInt(frames);
+        buffer.putFloat(view.x).putFloat(view.y).putFloat(view.width).putFloat(view.height);
+        buffer.putFloat(viewport.zoom()).putFloat(viewport.cameraX()).putFloat(viewport.cameraY());
+        buffer.putInt(viewport.worldWidth()).putInt(viewport.worldHeight());
+        buffer.putInt(playerTeam);
+        buffer.putInt(units.size).putInt(buildings.size);
+
+        for (int i = 0; i < units.size; i++) {
+            buffer.putFloat(units.x[i]).putFloat(units.y[i]);
+            buffer.putChar((char) Math.round(units.rotation[i] * (65536f / 360f)));
+            buffer.put((byte) units.team[i]);
+            buffer.putChar((char) units.type[i]);
+            buffer.putInt(units.id[i]);
+        }
+
+        float half = OverlayEngine.tilesize / 2f;
+        for (int i = 0; i < buildings.size; i++) {
+            buffer.putChar((char) clampChar(Math.round(buildings.x[i] / half)));
+            buffer.putChar((char) clampChar(Math.round(buildings.y[i] / half)));
+            buffer.putInt(buildings.tile[i]);
+            buffer.putChar((char) buildings.block[i]);
+            buffer.put((byte) buildings.blockSize[i]);
+            buffer.put((byte) buildings.team[i]);
+        }
+
+        flush();
+        frames++;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) bytesWritten += channel.write(buffer);
+    }
+
+    private static int clampChar(int v) {
+        return Math.max(0, Math.min(0xffff, v));
+    }
+}
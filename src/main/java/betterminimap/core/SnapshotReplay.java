@@ -0,0 +1,163 @@
+package betterminimap.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+public final class SnapshotReplay implements EntitySource, Viewport {
+    private final MappedByteBuffer data;
+    private final UnitSnapshot units = new UnitSnapshot();
+    private final BuildingSnapshot buildings = new BuildingSnapshot();
+    private final ViewRect view = new ViewRect();
+
+    private int[] frameOffsets = new int[256];
+    private int frameCount;
+    private int frame = -1;
+
+    private float zoom;
+    private float cameraX;
+    private float cameraY;
+    private int worldWidth;
+    private int worldHeight;
+    private int playerTeam;
+
+    public SnapshotReplay(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            in.close();
+        }
+
+        if (data.limit() < SnapshotRecorder.fileHeaderBytes || data.getInt(0) != SnapshotRecorder.magic) {
+            throw new IOException("Not a betterMiniMap snapshot file: " + file);
+        }
+        int version = data.getInt(4);
+        if (version != SnapshotRecorder.formatVersion) {
+            throw new IOException("Unsupported snapshot version " + version + ": " + file);
+        }
+        indexFrames();
+    }
+
+    public int frameCount() {
+        return frameCount;
+    }
+
+    public int frame() {
+        return frame;
+    }
+
+    public ViewRect view() {
+        return view;
+    }
+
+    public UnitSnapshot units() {
+        return units;
+    }
+
+    public BuildingSnapshot buildings() {
+        return buildings;
+    }
+
+    public void seek(int index) {
+        if (index < 0 || index >= frameCount) throw new IndexOutOfBoundsException("frame " + index + " of " + frameCount);
+        frame = index;
+
+        int p = frameOffsets[index] + 8;
+        view.set(data.getFloat(p), data.getFloat(p + 4), data.getFloat(p + 8), data.getFloat(p + 12));
+        zoom = data.getFloat(p + 16);
+        cameraX = data.getFloat(p + 20);
+        cameraY = data.getFloat(p + 24);
+        worldWidth = data.getInt(p + 28);
+        worldHeight = data.getInt(p + 32);
+        playerTeam = data.getInt(p + 36);
+        int unitCount = data.getInt(p + 40);
+        int buildingCount = data.getInt(p + 44);
+        p += 48;
+
+        units.clear();
+        for (int i = 0; i < unitCount; i++, p += SnapshotRecorder.unitBytes) {
+            float rotation = data.getChar(p + 8) * (360f / 65536f);
+            units.add(data.getFloat(p), data.getFloat(p + 4), rotation, data.get(p + 10) & 0xff, data.getChar(p + 11), data.getInt(p + 13));
+        }
+
+        float half = OverlayEngine.tilesize / 2f;
+        buildings.clear();
+        for (int i = 0; i < buildingCount; i++, p += SnapshotRecorder.buildingBytes) {
+            buildings.add(data.getChar(p) * half, data.getChar(p + 2) * half, data.getChar(p + 8), data.get(p + 10) & 0xff, data.get(p + 11) & 0xff, data.getInt(p + 4));
+        }
+    }
+
+    public boolean next() {
+        if (frame + 1 >= frameCount) return false;
+        seek(frame + 1);
+        return true;
+    }
+
+    @Override
+    public int playerTeam() {
+        return playerTeam;
+    }
+
+    @Override
+    public void collectUnits(ViewRect rect, OverlaySettings settings, UnitSnapshot out) {
+        for (int i = 0; i < units.size; i++) {
+            out.add(units.x[i], units.y[i], units.rotation[i], units.team[i], units.type[i], units.id[i]);
+        }
+    }
+
+    @Override
+    public void collectBuildings(ViewRect rect, OverlaySettings settings, BuildingSnapshot out) {
+        for (int i = 0; i < buildings.size; i++) {
+            out.add(buildings.x[i], buildings.y[i], buildings.block[i], buildings.blockSize[i], buildings.team[i], buildings.tile[i]);
+        }
+    }
+
+    @Override
+    public float cameraX() {
+        return cameraX;
+    }
+
+    @Override
+    public float cameraY() {
+        return cameraY;
+    }
+
+    @Override
+    public float zoom() {
+        return zoom;
+    }
+
+    @Override
+    public int worldWidth() {
+        return worldWidth;
+    }
+
+    @Override
+    public int worldHeight() {
+        return worldHeight;
+    }
+
+    // A recording cut short by a crash ends in a partial frame; it is dropped rather than rejected.
+    private void indexFrames() {
+        int p = SnapshotRecorder.fileHeaderBytes;
+        int limit = data.limit();
+        while (p + 4 <= limit) {
+            int body = data.getInt(p);
+            if (body < SnapshotRecorder.frameHeaderBytes || body > limit - p - 4) break;
+
+            int unitCount = data.getInt(p + 4 + 44);
+            int buildingCount = data.getInt(p + 4 + 48);
+            long expected = SnapshotRecorder.frameHeaderBytes + (long) unitCount * SnapshotRecorder.unitBytes + (long) buildingCount * SnapshotRecorder.buildingBytes;
+            if (unitCount < 0 || buildingCount < 0 || expected != body) break;
+
+            if (frameCount == frameOffsets.length) frameOffsets = Arrays.copyOf(frameOffsets, frameCount * 2);
+            frameOffsets[frameCount++] = p;
+            p += 4 + body;
+        }
+    }
+}
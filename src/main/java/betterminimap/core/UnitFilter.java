@@ -0,0 +1,37 @@
+package betterminimap.core;
+
+public final class UnitFilter {
+    private UnitFilter() {
+    }
+
+    public static void filter(UnitSnapshot in, int from, int to, UnitSnapshot out, OverlaySettings settings, int playerTeam, ViewRect rect) {
+        filter(in, from, to, out, settings, playerTeam, rect, null);
+    }
+
+    public static void filter(UnitSnapshot in, int from, int to, UnitSnapshot out, OverlaySettings settings, int playerTeam, ViewRect rect, VisibilityMask fog) {
+        filter(in, from, to, out, settings.unitFilter(), playerTeam, settings.showEnemyUnits(), settings.showFriendlyUnits(), rect, fog);
+    }
+
+    public static void filter(UnitSnapshot in, UnitSnapshot out, boolean[] typeEnabled, int playerTeam, boolean showEnemy, boolean showFriendly, ViewRect rect) {
+        out.clear();
+        filter(in, 0, in.size, out, typeEnabled, playerTeam, showEnemy, showFriendly, rect, null);
+    }
+
+    // Enemy units hidden by fog are dropped with one bit lookup before the other checks run.
+    public static void filter(UnitSnapshot in, int from, int to, UnitSnapshot out, boolean[] typeEnabled, int playerTeam, boolean showEnemy, boolean showFriendly,
+                              ViewRect rect, VisibilityMask fog) {
+        boolean fogged = fog != null && fog.enabled();
+        for (int i = from; i < to; i++) {
+            if (fogged && in.team[i] != playerTeam && !fog.unitVisible(in.x[i], in.y[i])) continue;
+            int type = in.type[i];
+            if (type < 0 || type >= typeEnabled.length || !typeEnabled[type]) continue;
+            boolean enemy = in.team[i] != playerTeam;
+            if (enemy && !showEnemy) continue;
+            if (!enemy && !showFriendly) continue;
+
+            float x = in.x[i], y = in.y[i];
+            if (!rect.contains(x, y)) continue;
+            out.add(x, y, in.rotation[i], in.team[i], type, in.id[i]);
+        }
+    }
+}
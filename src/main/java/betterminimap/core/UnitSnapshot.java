@@ -0,0 +1,88 @@
+package betterminimap.core;
+
+import java.util.Arrays;
+
+public final class UnitSnapshot {
+    public int size;
+    public float[] x = new float[256];
+    public float[] y = new float[256];
+    public float[] rotation = new float[256];
+    public int[] team = new int[256];
+    public int[] type = new int[256];
+    public int[] id = new int[256];
+
+    public float[] prevX = new float[256];
+    public float[] prevY = new float[256];
+    public float[] prevRotation = new float[256];
+    public int[] prevIndex = new int[256];
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(float ux, float uy, float urotation, int uteam, int utype, int uid) {
+        if (size == x.length) grow();
+        x[size] = ux;
+        y[size] = uy;
+        rotation[size] = urotation;
+        team[size] = uteam;
+        type[size] = utype;
+        id[size] = uid;
+        size++;
+    }
+
+    public void linkPrevious(UnitSnapshot previous, float progress, IntIndexMap indexById) {
+        indexById.clear();
+        for (int i = 0; i < previous.size; i++) {
+            indexById.put(previous.id[i], i);
+        }
+
+        for (int i = 0; i < size; i++) {
+            int k = indexById.get(id[i], -1);
+            prevIndex[i] = k;
+            if (k < 0) {
+                prevX[i] = x[i];
+                prevY[i] = y[i];
+                prevRotation[i] = rotation[i];
+            } else {
+                prevX[i] = MarkerMath.lerp(previous.prevX[k], previous.x[k], progress);
+                prevY[i] = MarkerMath.lerp(previous.prevY[k], previous.y[k], progress);
+                prevRotation[i] = MarkerMath.lerpAngle(previous.prevRotation[k], previous.rotation[k], progress);
+            }
+        }
+    }
+
+    // Same units in the same order at the same positions and headings, i.e. nothing a settled
+    // frame would draw differently.
+    public boolean sameAs(UnitSnapshot other) {
+        if (size != other.size) return false;
+        for (int i = 0; i < size; i++) {
+            if (id[i] != other.id[i] || x[i] != other.x[i] || y[i] != other.y[i] || rotation[i] != other.rotation[i]) return false;
+            if (team[i] != other.team[i] || type[i] != other.type[i]) return false;
+        }
+        return true;
+    }
+
+    // Whether interpolating from the linked previous positions draws anything different from
+    // the snapshot itself.
+    public boolean moving() {
+        for (int i = 0; i < size; i++) {
+            if (prevX[i] != x[i] || prevY[i] != y[i] || prevRotation[i] != rotation[i]) return true;
+        }
+        return false;
+    }
+
+    private void grow() {
+        int cap = x.length * 2;
+        x = Arrays.copyOf(x, cap);
+        y = Arrays.copyOf(y, cap);
+        rotation = Arrays.copyOf(rotation, cap);
+        team = Arrays.copyOf(team, cap);
+        type = Arrays.copyOf(type, cap);
+        id = Arrays.copyOf(id, cap);
+        prevX = Arrays.copyOf(prevX, cap);
+        prevY = Arrays.copyOf(prevY, cap);
+        prevRotation = Arrays.copyOf(prevRotation, cap);
+        prevIndex = Arrays.copyOf(prevIndex, cap);
+    }
+}
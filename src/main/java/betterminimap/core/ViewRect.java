@@ -0,0 +1,37 @@
+package betterminimap.core;
+
+public final class ViewRect {
+    public float x;
+    public float y;
+    public float width;
+    public float height;
+
+    public ViewRect set(float x, float y, float width, float height) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        return this;
+    }
+
+    public ViewRect set(ViewRect other) {
+        return set(other.x, other.y, other.width, other.height);
+    }
+
+    public boolean contains(float px, float py) {
+        return px >= x && px <= x + width && py >= y && py <= y + height;
+    }
+
+    public boolean contains(ViewRect other) {
+        return other.x >= x && other.y >= y && other.x + other.width <= x + width && other.y + other.height <= y + height;
+    }
+
+    public boolean overlaps(ViewRect other) {
+        return x < other.x + other.width && x + width > other.x && y < other.y + other.height && y + height > other.y;
+    }
+
+    public boolean equals(ViewRect other, float epsilon) {
+        return Math.abs(x - other.x) <= epsilon && Math.abs(y - other.y) <= epsilon
+            && Math.abs(width - other.width) <= epsilon && Math.abs(height - other.height) <= epsilon;
+    }
+}
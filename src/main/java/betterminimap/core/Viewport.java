@@ -0,0 +1,13 @@
+package betterminimap.core;
+
+public interface Viewport {
+    float cameraX();
+
+    float cameraY();
+
+    float zoom();
+
+    int worldWidth();
+
+    int worldHeight();
+}
@@ -0,0 +1,132 @@
+package betterminimap.core;
+
+import java.util.Arrays;
+
+public final class VisibilityMask {
+    // Dimensions and bits are swapped in together, so a reader on another thread (the async
+    // clustering worker) never pairs a new size with the old arrays across a world load. Queries
+    // read the shown team's bits; every other team keeps its own, so switching teams does not
+    // start over from all-hidden.
+    private volatile Bits bits = new Bits(0, 0);
+    private volatile boolean enabled;
+    private Bits[] teams = new Bits[0];
+    private int shown = -1;
+
+    public void reset(int width, int height) {
+        Bits current = bits;
+        width = Math.max(0, width);
+        height = Math.max(0, height);
+        Arrays.fill(teams, null);
+        if (current.width == width && current.height == height) {
+            Arrays.fill(current.unit, 0L);
+            Arrays.fill(current.building, 0L);
+        } else {
+            current = new Bits(width, height);
+        }
+        if (shown >= 0) teams[shown] = current;
+        bits = current;
+    }
+
+    public int width() {
+        return bits.width;
+    }
+
+    public int height() {
+        return bits.height;
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    // While disabled every query answers visible; enabling starts from all-hidden so nothing
+    // leaks before the first pass has filled the bits in.
+    public void setEnabled(boolean enabled) {
+        if (this.enabled == enabled) return;
+        if (enabled) reset(bits.width, bits.height);
+        this.enabled = enabled;
+    }
+
+    // Points queries at `team`'s bits; a team seen for the first time starts all-hidden.
+    public void show(int team) {
+        if (team == shown || team < 0) return;
+        shown = team;
+        bits = team(team);
+    }
+
+    public void setTile(int x, int y, boolean unitVisible, boolean buildingVisible) {
+        bits.set(x, y, unitVisible, buildingVisible);
+    }
+
+    public void setTile(int team, int x, int y, boolean unitVisible, boolean buildingVisible) {
+        team(team).set(x, y, unitVisible, buildingVisible);
+    }
+
+    public boolean unitVisible(float x, float y) {
+        if (!enabled) return true;
+        Bits b = bits;
+        return b.test(b.unit, Math.round(x / OverlayEngine.tilesize), Math.round(y / OverlayEngine.tilesize));
+    }
+
+    public boolean buildingVisible(float x, float y) {
+        return buildingVisible(x, y, 1);
+    }
+
+    // Like the game's own fog check, a building shows as soon as any tile it covers is visible,
+    // so a large enemy block at the edge of vision is not hidden by its centre tile alone.
+    public boolean buildingVisible(float x, float y, int size) {
+        if (!enabled) return true;
+        Bits b = bits;
+        size = Math.max(1, size);
+        float offset = (size + 1) % 2 * OverlayEngine.tilesize / 2f;
+        int minX = Math.round((x - offset) / OverlayEngine.tilesize) - (size - 1) / 2;
+        int minY = Math.round((y - offset) / OverlayEngine.tilesize) - (size - 1) / 2;
+        for (int ty = minY; ty < minY + size; ty++) {
+            for (int tx = minX; tx < minX + size; tx++) {
+                if (b.test(b.building, tx, ty)) return true;
+            }
+        }
+        return false;
+    }
+
+    private Bits team(int team) {
+        if (team >= teams.length) teams = Arrays.copyOf(teams, Math.max(team + 1, teams.length * 2));
+        Bits b = teams[team];
+        if (b == null) {
+            Bits current = bits;
+            b = teams[team] = new Bits(current.width, current.height);
+        }
+        return b;
+    }
+
+    private static final class Bits {
+        final int width;
+        final int height;
+        final long[] unit;
+        final long[] building;
+
+        Bits(int width, int height) {
+            this.width = width;
+            this.height = height;
+            int words = (width * height + 63) >>> 6;
+            unit = new long[words];
+            building = new long[words];
+        }
+
+        void set(int x, int y, boolean unitVisible, boolean buildingVisible) {
+            if (x < 0 || y < 0 || x >= width || y >= height) return;
+            int i = x + y * width;
+            int word = i >>> 6;
+            long bit = 1L << i;
+
+            unit[word] = unitVisible ? unit[word] | bit : unit[word] & ~bit;
+            building[word] = buildingVisible ? building[word] | bit : building[word] & ~bit;
+        }
+
+        boolean test(long[] bits, int tx, int ty) {
+            if (tx < 0 || ty < 0 || tx >= width || ty >= height) return false;
+            int i = tx + ty * width;
+            return (bits[i >>> 6] & (1L << i)) != 0L;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package betterminimap.features;
+
+import arc.util.Log;
+import betterminimap.core.ClusterPyramid;
+import betterminimap.core.IntIndexMap;
+import betterminimap.core.OverlayEngine;
+import betterminimap.core.OverlaySettings;
+import betterminimap.core.UnitFilter;
+import betterminimap.core.UnitSnapshot;
+import betterminimap.core.ViewRect;
+import betterminimap.core.VisibilityMask;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+final class AsyncClusterWorker {
+    static final class Result {
+        final UnitSnapshot units = new UnitSnapshot();
+        final ClusterPyramid clusters = new ClusterPyramid();
+        int scanned;
+    }
+
+    private static final Result empty = new Result();
+
+    private final UnitSnapshot candidates = new UnitSnapshot();
+    private final IntIndexMap indexById = new IntIndexMap();
+    private final ViewRect rect = new ViewRect();
+    private final Runnable task = this::run;
+
+    private OverlaySettings settings;
+    private VisibilityMask visibility;
+    private int playerTeam;
+    private float clusterWorld;
+    private float progress;
+    private float shownCell;
+    private Result previous;
+    private Result output;
+
+    private ExecutorService executor;
+    private boolean failed;
+    private boolean running;
+    private volatile Result published;
+    private volatile boolean crashed;
+
+    boolean available() {
+        if (failed) return false;
+        if (executor != null) return true;
+
+        try {
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "betterminimap-cluster");
+                thread.setDaemon(true);
+                return thread;
+            });
+            return true;
+        } catch (Throwable t) {
+            failed = true;
+            Log.err("[betterminimap] Background clustering unavailable", t);
+            return false;
+        }
+    }
+
+    boolean running() {
+        return running;
+    }
+
+    UnitSnapshot candidates() {
+        return candidates;
+    }
+
+    Result poll() {
+        if (!running) return null;
+        if (crashed) {
+            running = false;
+            failed = true;
+            shutdown();
+            return null;
+        }
+
+        Result result = published;
+        if (result == null) return null;
+
+        published = null;
+        running = false;
+        return result;
+    }
+
+    // The fog mask keeps being updated on the render thread while this runs; a bit read mid-pass is
+    // at most one fog pass (0.1s) old, less than the staleness the candidates already have.
+    // The render thread keeps cutting `previous.clusters` for drawing, which moves its shown level
+    // and builds its coarser levels, so the shown level is copied here. The job only reads the
+    // previous units and base-cell assignments, which nothing writes once a result is published.
+    boolean submit(OverlaySettings settings, VisibilityMask visibility, int playerTeam, ViewRect rect, float clusterWorld, float progress, Result previous, Result output) {
+        if (running || !available()) return false;
+
+        this.settings = settings;
+        this.visibility = visibility;
+        this.playerTeam = playerTeam;
+        this.rect.set(rect);
+        this.clusterWorld = clusterWorld;
+        this.progress = progress;
+        this.previous = previous == null ? empty : previous;
+        this.shownCell = this.previous.clusters.shownCell();
+        this.output = output;
+
+        try {
+            running = true;
+            executor.execute(task);
+            return true;
+        } catch (Throwable t) {
+            running = false;
+            failed = true;
+            Log.err("[betterminimap] Background clustering rejected", t);
+            shutdown();
+            return false;
+        }
+    }
+
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        running = false;
+        published = null;
+    }
+
+    private void run() {
+        try {
+            UnitSnapshot units = output.units;
+            units.clear();
+            UnitFilter.filter(candidates, 0, candidates.size, units, settings, playerTeam, rect, visibility);
+
+            units.linkPrevious(previous.units, progress, indexById);
+
+            output.clusters.begin(OverlayEngine.clusterBaseCell(clusterWorld), previous.clusters, progress, shownCell);
+            output.clusters.addUnits(units, 0, units.size);
+            output.clusters.finish();
+            output.clusters.cutStable(clusterWorld);
+            output.scanned = candidates.size;
+
+            previous = null;
+            published = output;
+        } catch (Throwable t) {
+            Log.err("[betterminimap] Background clustering failed", t);
+            crashed = true;
+        }
+    }
+}
@@ -2,35 +2,40 @@ package betterminimap.features;
 
 import arc.Core;
 import arc.Events;
+import arc.func.Cons;
 import arc.graphics.Color;
 import arc.graphics.g2d.Draw;
-import arc.graphics.g2d.Fill;
-import arc.graphics.g2d.Lines;
-import arc.math.Angles;
 import arc.math.Mathf;
 import arc.math.Mat;
 import arc.math.geom.Rect;
 import arc.scene.Element;
 import arc.scene.event.Touchable;
-import arc.scene.ui.TextButton;
-import arc.scene.ui.TextField;
-import arc.scene.ui.layout.Scl;
+import arc.scene.ui.Label;
+import arc.scene.ui.Slider;
 import arc.scene.ui.layout.Table;
-import arc.struct.ObjectSet;
 import arc.struct.Seq;
-import arc.util.Interval;
+import arc.util.Time;
 import arc.util.Tmp;
 import betterminimap.GithubUpdateCheck;
+import betterminimap.core.BuildingRuns;
+import betterminimap.core.BuildingSnapshot;
+import betterminimap.core.ClusterBuffer;
+import betterminimap.core.ClusterPyramid;
+import betterminimap.core.FrameBudget;
+import betterminimap.core.IntIndexMap;
+import betterminimap.core.MarkerBudget;
+import betterminimap.core.MarkerMath;
+import betterminimap.core.OverlayEngine;
+import betterminimap.core.OverlayProfiler;
+import betterminimap.core.UnitFilter;
+import betterminimap.core.UnitSnapshot;
+import betterminimap.core.ViewRect;
 import mindustry.game.EventType;
 import mindustry.game.Team;
 import mindustry.gen.Building;
 import mindustry.gen.Groups;
-import mindustry.gen.Icon;
-import mindustry.gen.Unit;
-import mindustry.graphics.Pal;
 import mindustry.type.UnitType;
 import mindustry.ui.Styles;
-import mindustry.ui.dialogs.BaseDialog;
 import mindustry.ui.dialogs.SettingsMenuDialog;
 import mindustry.world.Block;
 
@@ -44,68 +49,130 @@ import static mindustry.Vars.world;
 
 public class BetterMiniMapFeature {
     private static final String overlayName = "betterminimap-overlay";
-
-    private static final String keyEnabled = "mmplus-enabled";
-
-    private static final String keyUnitsEnabled = "mmplus-units-enabled";
-    private static final String keyBuildingsEnabled = "mmplus-buildings-enabled";
-
-    private static final String keyShowFriendlyUnits = "mmplus-units-friendly";
-    private static final String keyShowEnemyUnits = "mmplus-units-enemy";
-    private static final String keyShowFriendlyBuildings = "mmplus-buildings-friendly";
-    private static final String keyShowEnemyBuildings = "mmplus-buildings-enemy";
-    private static final String keyTintBuildingIcons = "mmplus-buildings-tint";
-
-    private static final String keyUnitScale = "mmplus-unitScale";
-    private static final String keyUnitSizeLegacy = "mmplus-unitSize";
-    private static final String keyUnitAlpha = "mmplus-unitAlpha";
-    private static final String keyUnitClusterPx = "mmplus-unitClusterPx";
-    private static final String keyBuildingScale = "mmplus-buildingScale";
-    private static final String keyIconAlpha = "mmplus-iconAlpha";
-    private static final String keyIconBgAlpha = "mmplus-iconBgAlpha";
+    private static final String fullMapOverlayName = "betterminimap-fullmap-overlay";
+
+    static final String keyEnabled = "mmplus-enabled";
+
+    static final String keyUnitsEnabled = "mmplus-units-enabled";
+    static final String keyBuildingsEnabled = "mmplus-buildings-enabled";
+
+    static final String keyShowFriendlyUnits = "mmplus-units-friendly";
+    static final String keyShowEnemyUnits = "mmplus-units-enemy";
+    static final String keyShowFriendlyBuildings = "mmplus-buildings-friendly";
+    static final String keyShowEnemyBuildings = "mmplus-buildings-enemy";
+    static final String keyTintBuildingIcons = "mmplus-buildings-tint";
+
+    static final String keyUnitScale = "mmplus-unitScale";
+    static final String keyUnitSizeLegacy = "mmplus-unitSize";
+    static final String keyUnitAlpha = "mmplus-unitAlpha";
+    static final String keyUnitClusterPx = "mmplus-unitClusterPx";
+    static final String keyBuildingScale = "mmplus-buildingScale";
+    static final String keyIconAlpha = "mmplus-iconAlpha";
+    static final String keyIconBgAlpha = "mmplus-iconBgAlpha";
+    static final String keyRefreshBudgetUs = "mmplus-refreshBudgetUs";
+    static final String keyFullMapEnabled = "mmplus-fullmap";
+    static final String keyMarkerBudget = "mmplus-markerBudget";
+    static final String keyHeatmapThreshold = "mmplus-heatmap-threshold";
+    static final String keyAsyncClustering = "mmplus-async-clustering";
+    static final String keyProfilerPanel = "mmplus-profiler-panel";
+    static final String keyProfilerDump = "mmplus-profiler-dump";
+    static final String keyRecordSnapshots = "mmplus-record-snapshots";
 
     private static final String keyUnitList = "mmplus-units";
-    private static final String keyBlockList = "mmplus-blocks";
+    static final String keyBlockList = "mmplus-blocks";
 
     private static final String keyFilterInit = "mmplus-filter-init";
 
-    private static final Interval interval = new Interval(5);
-    private static final int idSettings = 0;
-    private static final int idAttach = 1;
-    private static final int idVisible = 2;
-
-    private static final float minimapBaseSize = 16f;
-    private static final float settingsRefreshTime = 0.5f;
-    private static final float attachRefreshTime = 1.0f;
     private static final float visibleRefreshTime = 0.25f;
+    private static final float maxRefreshTime = 1.0f;
+    private static final float refreshCostShare = 20f;
+
+    private static final int phaseIdle = 0;
+    private static final int phaseGather = 1;
+    private static final int phaseFilter = 2;
+    private static final int phaseBuildings = 3;
+    private static final int phaseCluster = 4;
 
     private static boolean inited;
 
-    private static boolean enabled;
-    private static boolean unitsEnabled;
-    private static boolean buildingsEnabled;
-    private static boolean showFriendlyUnits;
-    private static boolean showEnemyUnits;
-    private static boolean showFriendlyBuildings;
-    private static boolean showEnemyBuildings;
-    private static boolean tintBuildingIcons;
-    private static float unitSizePx;
-    private static float unitAlpha;
-    private static float unitClusterPx;
-    private static float buildingScale;
-    private static float iconAlpha;
-    private static float iconBgAlpha;
-
-    private static boolean[] unitEnabledById;
-    private static boolean[] blockEnabledById;
-
-    private static final Seq<Unit> visibleUnits = new Seq<>(false, 256);
-    private static final Seq<Building> visibleBuildings = new Seq<>(false, 256);
-    private static final Seq<UnitCluster> visibleUnitClusters = new Seq<>(false, 128);
+    private static SettingsSnapshot settings = SettingsSnapshot.initial;
+    private static int settingsVersion;
+    private static boolean settingsDirty;
+    private static boolean filtersDirty = true;
+    private static HudMinimapOverlay attachedOverlay;
+    private static FullMapOverlay attachedFullMapOverlay;
+
+    private static final FilterList unitList = new FilterList(keyUnitList);
+    private static final FilterList blockList = new FilterList(keyBlockList);
+    private static ContentSearchIndex unitSearch;
+    private static ContentSearchIndex blockSearch;
+
+    private static UnitSnapshot visibleUnits = new UnitSnapshot();
+    private static UnitSnapshot pendingUnits = new UnitSnapshot();
+    private static final IntIndexMap previousUnitIndex = new IntIndexMap();
+    private static float visibleSnapshotTime;
+    private static Seq<Building> visibleBuildings = new Seq<>(false, 256);
+    private static Seq<Building> pendingBuildings = new Seq<>(false, 256);
+    private static ClusterPyramid visiblePyramid = new ClusterPyramid();
+    private static ClusterPyramid pendingPyramid = new ClusterPyramid();
+    private static ClusterBuffer visibleUnitClusters = visiblePyramid.level(0);
+
+    private static final FrameBudget refreshBudget = new FrameBudget();
+    private static final UnitSnapshot unitCandidates = new UnitSnapshot();
+    private static final ViewRect refreshRect = new ViewRect();
+    private static final ViewRect lastQuery = new ViewRect();
+    private static int refreshPhase = phaseIdle;
+    private static int refreshCursor;
+    private static long refreshCostNs;
+    private static float refreshStartedAt = -1000f;
+    private static float refreshPeriod = visibleRefreshTime;
+    private static float refreshClusterWorld;
+    private static int refreshSettingsVersion = -1;
+    private static boolean refreshFromTrees;
+
+    private static final AsyncClusterWorker asyncWorker = new AsyncClusterWorker();
+    private static AsyncClusterWorker.Result asyncShown;
+    private static AsyncClusterWorker.Result asyncSpare;
+    private static boolean asyncActive;
+    private static int asyncGeneration;
+    private static int asyncSubmittedGeneration;
+
+    private static final Rect queryRect = new Rect();
+    private static final Cons<Building> buildingCollector = BetterMiniMapFeature::collectBuilding;
+    private static final BuildingIndex buildingIndex = new BuildingIndex();
+    private static final FogVisibility fog = new FogVisibility();
+    private static final GameOverlayInputs gameInputs = new GameOverlayInputs(buildingIndex, fog.mask());
+    private static final BuildingLayerCache buildingLayer = new BuildingLayerCache();
+    private static final Seq<Building> layerBuildings = new Seq<>(false, 256);
+    private static final BuildingSnapshot mergeScratch = new BuildingSnapshot();
+    private static final BuildingRuns layerRuns = new BuildingRuns();
+    private static BuildingRuns visibleRuns = new BuildingRuns();
+    private static BuildingRuns spareRuns = new BuildingRuns();
+    private static final Cons<Rect> buildingLayerPainter = BetterMiniMapFeature::paintBuildingLayer;
+    private static final MarkerBatch markerBatch = new MarkerBatch();
+    private static final MarkerBudget markerBudget = new MarkerBudget();
+    private static final HeatmapLayer heatmap = new HeatmapLayer();
+    private static boolean heatmapActive;
+    private static Seq<Building> buildingTarget = visibleBuildings;
+    private static int teamColorHash;
+    private static int buildingLayerKey;
     private static int visibleRevision;
-    private static int clusteredRevision = -1;
-    private static float clusteredWorld = -1f;
-
+    private static boolean visibleMoving;
+
+    private static final OverlayFrameCache hudFrame = new OverlayFrameCache();
+    private static final OverlayFrameCache fullMapFrame = new OverlayFrameCache();
+    private static final int[] overlayFrameKey = new int[12];
+    private static final ViewRect frameRect = new ViewRect();
+    private static final Runnable overlayFramePainter = BetterMiniMapFeature::paintOverlayFrame;
+    private static ViewRect frameView;
+    private static float frameOriginX;
+    private static float frameOriginY;
+    private static float frameScaleX;
+    private static float frameScaleY;
+
+    private static final ViewRect overlayView = new ViewRect();
+    private static final ViewRect cullRect = new ViewRect();
+    private static final FullMapView fullMap = new FullMapView();
     private static final Rect viewRect = new Rect();
     private static final Mat transform = new Mat();
     private static final Mat oldTransform = new Mat();
@@ -117,48 +184,99 @@ public class BetterMiniMapFeature {
         if (ui != null && ui.hudGroup != null) {
             Element old = ui.hudGroup.find(overlayName);
             if (old != null) old.remove();
+            old = ui.hudGroup.find(fullMapOverlayName);
+            if (old != null) old.remove();
         }
 
         Events.on(EventType.ClientLoadEvent.class, e -> {
             ensureDefaultFilterLists();
-            refreshSettings();
-            rebuildUnitFilterCache();
-            rebuildBlockFilterCache();
-            ensureOverlayAttached();
+            unitSearch = new ContentSearchIndex(content.units());
+            blockSearch = new ContentSearchIndex(content.blocks().select(Block::hasBuilding));
+            markFiltersDirty();
+            applySettings();
+            if (ui != null && ui.settings != null) ui.settings.hidden(BetterMiniMapFeature::markSettingsDirty);
         });
 
         Events.on(EventType.WorldLoadEvent.class, e -> {
-            visibleUnits.clear();
-            visibleBuildings.clear();
-            visibleUnitClusters.clear();
-            visibleRevision++;
-            clusteredRevision = -1;
+            buildingIndex.rebuild();
+            buildingLayer.reset(world.width(), world.height());
+            fullMap.reset();
+            heatmap.reset(world.width(), world.height());
+            hudFrame.invalidate();
+            fullMapFrame.invalidate();
+            fog.reset(world.width(), world.height());
+            SnapshotRecording.stop();
+            lastQuery.set(0f, 0f, 0f, 0f);
+            abortVisibleRefresh();
+            resetVisibleBuffers();
+        });
+
+        Events.on(EventType.TilePreChangeEvent.class, e -> {
+            if (e.tile.build == null) return;
+            buildingIndex.remove(e.tile.build);
+            invalidateBuildingLayer(e.tile.build);
         });
 
+        Events.on(EventType.TileChangeEvent.class, e -> {
+            if (e.tile.build == null) return;
+            buildingIndex.add(e.tile.build);
+            invalidateBuildingLayer(e.tile.build);
+        });
+
+        Events.on(EventType.BlockBuildEndEvent.class, e -> {
+            if (e.breaking || e.tile.build == null) return;
+            buildingIndex.add(e.tile.build);
+            invalidateBuildingLayer(e.tile.build);
+        });
+
+        Events.on(EventType.BlockDestroyEvent.class, e -> {
+            if (e.tile.build == null) return;
+            buildingIndex.remove(e.tile.build);
+            invalidateBuildingLayer(e.tile.build);
+        });
+
+        Events.on(EventType.BuildTeamChangeEvent.class, e -> invalidateBuildingLayer(e.build));
+
         Events.run(EventType.Trigger.update, () -> {
-            if (interval.check(idSettings, settingsRefreshTime)) refreshSettings();
-            if (interval.check(idAttach, attachRefreshTime)) ensureOverlayAttached();
+            // Both overlays only add to the current frame; it is closed here, once per game frame,
+            // so the history holds one entry per frame whichever of them drew.
+            OverlayProfiler.endFrame();
+            unitList.flushIfIdle();
+            blockList.flushIfIdle();
+            if (settingsDirty) applySettings();
+            ensureOverlayAttached();
+            fog.update(player == null ? -1 : player.team().id);
+            ProfilerHud.update(settings.profilerPanel, settings.profilerDump);
+            SnapshotRecording.update(settings.recordSnapshots, visibleRefreshTime, gameInputs, settings, lastQuery);
         });
     }
 
     public static void buildSettings(SettingsMenuDialog.SettingsTable table) {
-        table.checkPref(keyEnabled, false);
-        table.checkPref(keyUnitsEnabled, true);
-        table.checkPref(keyBuildingsEnabled, true);
-
-        table.checkPref(keyShowEnemyUnits, true);
-        table.checkPref(keyShowFriendlyUnits, true);
-
-        table.checkPref(keyShowEnemyBuildings, true);
-        table.checkPref(keyShowFriendlyBuildings, true);
-        table.checkPref(keyTintBuildingIcons, true);
-
-        table.sliderPref(keyUnitScale, 100, 10, 1000, 5, i -> i + "%");
-        table.sliderPref(keyUnitAlpha, 90, 10, 100, 5, i -> i + "%");
-        table.sliderPref(keyUnitClusterPx, 12, 2, 80, 1, i -> i + "px");
-        table.sliderPref(keyBuildingScale, 120, 10, 1000, 5, i -> i + "%");
-        table.sliderPref(keyIconAlpha, 90, 10, 100, 5, i -> i + "%");
-        table.sliderPref(keyIconBgAlpha, 35, 0, 100, 5, i -> i + "%");
+        table.checkPref(keyEnabled, false, v -> markSettingsDirty());
+        table.checkPref(keyUnitsEnabled, true, v -> markSettingsDirty());
+        table.checkPref(keyBuildingsEnabled, true, v -> markSettingsDirty());
+        table.checkPref(keyFullMapEnabled, true, v -> markSettingsDirty());
+
+        table.checkPref(keyShowEnemyUnits, true, v -> markSettingsDirty());
+        table.checkPref(keyShowFriendlyUnits, true, v -> markSettingsDirty());
+
+        table.checkPref(keyShowEnemyBuildings, true, v -> markSettingsDirty());
+        table.checkPref(keyShowFriendlyBuildings, true, v -> markSettingsDirty());
+        table.checkPref(keyTintBuildingIcons, true, v -> markSettingsDirty());
+
+        table.pref(new SliderPref(keyUnitScale, 100, 10, 1000, 5, i -> i + "%"));
+        table.pref(new SliderPref(keyUnitAlpha, 90, 10, 100, 5, i -> i + "%"));
+        table.pref(new SliderPref(keyUnitClusterPx, 12, 2, 80, 1, i -> i + "px"));
+        table.pref(new SliderPref(keyBuildingScale, 120, 10, 1000, 5, i -> i + "%"));
+        table.pref(new SliderPref(keyIconAlpha, 90, 10, 100, 5, i -> i + "%"));
+        table.pref(new SliderPref(keyIconBgAlpha, 35, 0, 100, 5, i -> i + "%"));
+        table.pref(new SliderPref(keyRefreshBudgetUs, 1000, 100, 5000, 100, i -> i + "μs"));
+        table.pref(new SliderPref(keyMarkerBudget, 5000, 500, 20000, 500, i -> String.valueOf(i)));
+        table.pref(new SliderPref(keyHeatmapThreshold, 20000, 0, 100000, 1000, i -> i == 0 ? Core.bundle.get("mmplus.heatmap.off") : String.valueOf(i)));
+        table.checkPref(keyAsyncClustering, false, v -> markSettingsDirty());
+        table.checkPref(keyProfilerPanel, false, v -> markSettingsDirty());
+        table.checkPref(keyProfilerDump, false, v -> markSettingsDirty());
+        table.checkPref(keyRecordSnapshots, false, v -> markSettingsDirty());
         table.checkPref(GithubUpdateCheck.enabledKey(), true);
         table.checkPref(GithubUpdateCheck.showDialogKey(), true);
 
@@ -177,9 +295,7 @@ public class BetterMiniMapFeature {
         });
 
         ensureDefaultFilterLists();
-        refreshSettings();
-        rebuildUnitFilterCache();
-        rebuildBlockFilterCache();
+        markFiltersDirty();
     }
 
     private static void ensureDefaultFilterLists() {
@@ -198,33 +314,66 @@ public class BetterMiniMapFeature {
         }
 
         Core.settings.put(keyFilterInit, true);
+        unitList.reload();
+        blockList.reload();
+    }
+
+    static void markSettingsDirty() {
+        settingsDirty = true;
+    }
+
+    static void markFiltersDirty() {
+        filtersDirty = true;
+        settingsDirty = true;
     }
 
-    private static void refreshSettings() {
-        enabled = Core.settings.getBool(keyEnabled);
-        unitsEnabled = Core.settings.getBool(keyUnitsEnabled, true);
-        buildingsEnabled = Core.settings.getBool(keyBuildingsEnabled, true);
+    private static void applySettings() {
+        settingsDirty = false;
 
-        showFriendlyUnits = Core.settings.getBool(keyShowFriendlyUnits, true);
-        showEnemyUnits = Core.settings.getBool(keyShowEnemyUnits, true);
-        showFriendlyBuildings = Core.settings.getBool(keyShowFriendlyBuildings, true);
-        showEnemyBuildings = Core.settings.getBool(keyShowEnemyBuildings, true);
-        tintBuildingIcons = Core.settings.getBool(keyTintBuildingIcons, true);
+        boolean[] units = settings.unitEnabledById;
+        boolean[] blocks = settings.blockEnabledById;
+        if (filtersDirty || units.length != content.units().size || blocks.length != content.blocks().size) {
+            filtersDirty = false;
+            units = unitList.enabledById(content.units());
+            blocks = blockList.enabledById(content.blocks());
+        }
 
-        if (Core.settings.has(keyUnitScale)) {
-            float unitScale = Mathf.clamp(Core.settings.getInt(keyUnitScale, 100) / 100f, 0.1f, 10f);
-            unitSizePx = 6f * unitScale;
-        } else {
-            unitSizePx = Math.max(1f, Core.settings.getInt(keyUnitSizeLegacy, 6));
+        SettingsSnapshot next = new SettingsSnapshot(settingsVersion + 1, units, blocks);
+        if (!next.sameAs(settings)) {
+            settingsVersion++;
+            settings = next;
         }
-        unitAlpha = Mathf.clamp(Core.settings.getInt(keyUnitAlpha, 90) / 100f);
-        unitClusterPx = Mathf.clamp(Core.settings.getInt(keyUnitClusterPx, 12), 2f, 80f);
-        buildingScale = Mathf.clamp(Core.settings.getInt(keyBuildingScale, 120) / 100f, 0.1f, 10f);
-        iconAlpha = Mathf.clamp(Core.settings.getInt(keyIconAlpha, 90) / 100f);
-        iconBgAlpha = Mathf.clamp(Core.settings.getInt(keyIconBgAlpha, 35) / 100f);
     }
 
+    // Runs every frame; while both overlays are still in the scene this is two field reads, and a
+    // rebuilt HUD or map fragment (which drops the old tables) gets them re-attached on the next frame.
     private static void ensureOverlayAttached() {
+        ensureHudOverlayAttached();
+        ensureFullMapOverlayAttached();
+    }
+
+    private static void ensureFullMapOverlayAttached() {
+        if (attachedFullMapOverlay != null && attachedFullMapOverlay.getScene() != null) return;
+        if (ui == null || ui.minimapfrag == null || !fullMap.usable()) return;
+
+        Element map = ui.minimapfrag.elem;
+        if (map == null || map.parent == null) return;
+
+        Element existing = map.parent.find(fullMapOverlayName);
+        if (existing instanceof FullMapOverlay) {
+            attachedFullMapOverlay = (FullMapOverlay) existing;
+            return;
+        }
+
+        FullMapOverlay overlay = new FullMapOverlay();
+        overlay.name = fullMapOverlayName;
+        overlay.touchable = Touchable.disabled;
+        map.parent.addChildAfter(map, overlay);
+        attachedFullMapOverlay = overlay;
+    }
+
+    private static void ensureHudOverlayAttached() {
+        if (attachedOverlay != null && attachedOverlay.getScene() != null) return;
         if (ui == null || ui.hudGroup == null) return;
         if (!Core.settings.getBool("minimap")) return;
 
@@ -232,7 +381,11 @@ public class BetterMiniMapFeature {
         if (!(minimap instanceof Table)) return;
 
         Table table = (Table) minimap;
-        if (table.find(overlayName) != null) return;
+        Element existing = table.find(overlayName);
+        if (existing instanceof HudMinimapOverlay) {
+            attachedOverlay = (HudMinimapOverlay) existing;
+            return;
+        }
         if (table.getChildren().isEmpty()) return;
 
         Element base = table.getChildren().get(0);
@@ -241,371 +394,534 @@ public class BetterMiniMapFeature {
         overlay.touchable = Touchable.disabled;
         table.addChild(overlay);
         overlay.toFront();
+        attachedOverlay = overlay;
     }
 
-    private static void rebuildUnitFilterCache() {
-        Seq<String> enabledNames = Core.settings.getJson(keyUnitList, Seq.class, String.class, Seq::new);
-        ObjectSet<String> enabledSet = new ObjectSet<>();
-        enabledNames.each(v -> enabledSet.add((String) v));
+    private static void stepVisibleRefresh(ViewRect viewRect, float clusterWorld, boolean queryMoved) {
+        boolean stale = queryMoved || refreshSettingsVersion != settings.version;
+        if (refreshPhase == phaseIdle || stale) {
+            if (!stale && Time.time - refreshStartedAt < refreshPeriod * Time.toSeconds) return;
+            beginVisibleRefresh(viewRect, clusterWorld);
+        }
 
-        unitEnabledById = new boolean[content.units().size];
-        for (UnitType type : content.units()) {
-            unitEnabledById[type.id] = enabledSet.contains(type.name);
+        refreshBudget.begin(settings.refreshBudgetUs * 1000L);
+        while (refreshPhase != phaseIdle && !refreshBudget.expired()) {
+            long started = OverlayProfiler.start();
+            int phase = refreshPhase;
+            switch (phase) {
+                case phaseGather:
+                    stepGatherUnits();
+                    break;
+                case phaseFilter:
+                    stepFilterUnits();
+                    break;
+                case phaseBuildings:
+                    stepCollectBuildings();
+                    break;
+                case phaseCluster:
+                    stepClusterUnits();
+                    break;
+                default:
+                    refreshPhase = phaseIdle;
+                    break;
+            }
+            OverlayProfiler.stop(phase == phaseCluster ? OverlayProfiler.phaseCluster : OverlayProfiler.phaseRefresh, started);
         }
+        refreshCostNs += refreshBudget.elapsed();
     }
 
-    private static void rebuildBlockFilterCache() {
-        Seq<String> enabledNames = Core.settings.getJson(keyBlockList, Seq.class, String.class, Seq::new);
-        ObjectSet<String> enabledSet = new ObjectSet<>();
-        enabledNames.each(v -> enabledSet.add((String) v));
+    private static void beginVisibleRefresh(ViewRect viewRect, float clusterWorld) {
+        refreshStartedAt = Time.time;
+        refreshSettingsVersion = settings.version;
+        refreshCostNs = 0L;
+        refreshCursor = 0;
+        refreshRect.set(viewRect);
+        refreshClusterWorld = clusterWorld;
+        refreshFromTrees = gameInputs.treesUsable();
+
+        pendingUnits.clear();
+        pendingBuildings.clear();
+        unitCandidates.clear();
+        refreshPhase = settings.enabled && settings.unitsEnabled && player != null && !heatmapActive ? phaseGather : phaseBuildings;
+    }
+
+    private static void abortVisibleRefresh() {
+        refreshPhase = phaseIdle;
+        refreshStartedAt = -refreshPeriod * Time.toSeconds;
+        unitCandidates.clear();
+        pendingUnits.clear();
+        pendingBuildings.clear();
+    }
 
-        blockEnabledById = new boolean[content.blocks().size];
-        for (Block block : content.blocks()) {
-            blockEnabledById[block.id] = enabledSet.contains(block.name);
+    private static void stepGatherUnits() {
+        if (!refreshFromTrees) {
+            gameInputs.collectAllUnits(unitCandidates);
+            refreshCursor = 0;
+            refreshPhase = phaseFilter;
+            return;
         }
+
+        while (refreshCursor < gameInputs.teamCount()) {
+            gameInputs.collectTeamUnits(refreshCursor++, refreshRect, settings, unitCandidates);
+            if (refreshBudget.expired()) return;
+        }
+
+        refreshCursor = 0;
+        refreshPhase = phaseFilter;
     }
 
-    private static void rebuildVisibleCache(Rect viewRect) {
-        visibleUnits.clear();
-        visibleBuildings.clear();
-        visibleRevision++;
+    private static void stepFilterUnits() {
+        if (player == null) {
+            unitCandidates.clear();
+            refreshPhase = phaseBuildings;
+            return;
+        }
 
-        if (unitEnabledById == null) rebuildUnitFilterCache();
-        if (blockEnabledById == null) rebuildBlockFilterCache();
-
-        if (enabled && unitsEnabled) {
-            Groups.unit.each(u -> {
-                if (u == null || !u.isValid()) return;
-                if (u.type == null) return;
-                if (u.type.id < 0 || u.type.id >= unitEnabledById.length) return;
-                if (!unitEnabledById[u.type.id]) return;
-                if (player == null) return;
-                boolean enemy = u.team != player.team();
-                if (enemy && !showEnemyUnits) return;
-                if (!enemy && !showFriendlyUnits) return;
-                if (!viewRect.contains(u.x, u.y)) return;
-                visibleUnits.add(u);
-            });
+        int playerTeam = player.team().id;
+        while (refreshCursor < unitCandidates.size) {
+            int end = Math.min(unitCandidates.size, refreshCursor + 256);
+            int accepted = pendingUnits.size;
+            UnitFilter.filter(unitCandidates, refreshCursor, end, pendingUnits, settings, playerTeam, refreshRect, fog.mask());
+            OverlayProfiler.count(OverlayProfiler.unitsScanned, end - refreshCursor);
+            OverlayProfiler.count(OverlayProfiler.unitsAccepted, pendingUnits.size - accepted);
+            refreshCursor = end;
+            if (refreshBudget.expired()) return;
         }
 
-        if (enabled && buildingsEnabled) {
-            Groups.build.each(b -> {
-                if (!(b instanceof Building)) return;
-                Building build = (Building) b;
-                if (build.block == null) return;
-                int id = build.block.id;
-                if (id < 0 || id >= blockEnabledById.length) return;
-                if (!blockEnabledById[id]) return;
-                if (player == null) return;
-                boolean enemy = build.team != player.team();
-                if (enemy && !showEnemyBuildings) return;
-                if (!enemy && !showFriendlyBuildings) return;
-                if (!viewRect.contains(build.x, build.y)) return;
-                visibleBuildings.add(build);
-            });
+        unitCandidates.clear();
+        refreshPhase = phaseBuildings;
+    }
+
+    private static void stepCollectBuildings() {
+        if (settings.enabled && settings.buildingsEnabled && player != null && (settings.showEnemyBuildings || settings.showFriendlyBuildings) && !useBuildingLayer()) {
+            if (!buildingIndex.ready()) buildingIndex.rebuild();
+            queryRect.set(refreshRect.x, refreshRect.y, refreshRect.width, refreshRect.height);
+            buildingTarget = pendingBuildings;
+            buildingIndex.each(settings.blockEnabledById, queryRect, buildingCollector);
+            buildingTarget = visibleBuildings;
         }
+
+        float progress = interpolationProgress();
+        pendingUnits.linkPrevious(visibleUnits, progress, previousUnitIndex);
+        pendingPyramid.begin(OverlayEngine.clusterBaseCell(refreshClusterWorld), visiblePyramid, progress);
+        refreshCursor = 0;
+        refreshPhase = phaseCluster;
     }
 
-    private static void drawMarkers(float invScale, float minimapScale) {
-        if (!enabled) return;
-        if (world == null || !state.isGame() || world.isGenerating()) return;
-        if (player == null) return;
-        if (unitEnabledById == null) rebuildUnitFilterCache();
-        if (blockEnabledById == null) rebuildBlockFilterCache();
+    private static void stepClusterUnits() {
+        while (refreshCursor < pendingUnits.size) {
+            int end = Math.min(pendingUnits.size, refreshCursor + 256);
+            pendingPyramid.addUnits(pendingUnits, refreshCursor, end);
+            refreshCursor = end;
+            if (refreshBudget.expired()) return;
+        }
 
-        if (enabled && unitsEnabled) {
-            buildUnitClusters(minimapScale);
-            Color friendly = Tmp.c1.set(Color.gray);
-            for (int i = 0; i < visibleUnitClusters.size; i++) {
-                UnitCluster cluster = visibleUnitClusters.get(i);
-                if (cluster == null || cluster.count <= 0 || cluster.type == null) continue;
-                boolean enemy = cluster.team != player.team();
-                Color c = enemy ? cluster.team.color : friendly;
-                drawUnitCluster(cluster, c, invScale);
-            }
+        pendingPyramid.finish();
+        publishVisibleRefresh();
+    }
+
+    private static void publishVisibleRefresh() {
+        OverlayProfiler.count(OverlayProfiler.clustersProduced, pendingPyramid.builtClusters());
+
+        UnitSnapshot units = visibleUnits;
+        visibleUnits = pendingUnits;
+        pendingUnits = units;
+
+        ClusterPyramid pyramid = visiblePyramid;
+        visiblePyramid = pendingPyramid;
+        pendingPyramid = pyramid;
+
+        Seq<Building> buildings = visibleBuildings;
+        visibleBuildings = pendingBuildings;
+        pendingBuildings = buildings;
+        buildingTarget = visibleBuildings;
+        mergeVisibleBuildings();
+
+        visibleSnapshotTime = Time.time;
+        if (!visibleUnits.sameAs(pendingUnits)) visibleRevision++;
+        visibleMoving = visibleUnits.moving();
+
+        updateTeamColorHash();
+
+        float costSeconds = refreshCostNs / 1e9f;
+        float frameScale = Math.max(1f, Core.graphics.getDeltaTime() * 60f);
+        refreshPeriod = Mathf.clamp(Math.max(visibleRefreshTime * frameScale, costSeconds * refreshCostShare), visibleRefreshTime, maxRefreshTime);
+        refreshPhase = phaseIdle;
+    }
+
+    private static void stepAsyncRefresh(ViewRect viewRect, float clusterWorld, boolean queryMoved) {
+        AsyncClusterWorker.Result done = asyncWorker.poll();
+        if (done != null && asyncSubmittedGeneration == asyncGeneration) {
+            OverlayProfiler.count(OverlayProfiler.unitsScanned, done.scanned);
+            OverlayProfiler.count(OverlayProfiler.unitsAccepted, done.units.size);
+            OverlayProfiler.count(OverlayProfiler.clustersProduced, done.clusters.builtClusters());
+            if (asyncShown == null || !done.units.sameAs(asyncShown.units)) visibleRevision++;
+            asyncSpare = asyncShown;
+            asyncShown = done;
+            visibleUnits = done.units;
+            visiblePyramid = done.clusters;
+            visibleSnapshotTime = Time.time;
+            visibleMoving = done.units.moving();
         }
+        if (asyncWorker.running()) return;
 
-        if (enabled && buildingsEnabled) {
-            for (int i = 0; i < visibleBuildings.size; i++) {
-                Building b = visibleBuildings.get(i);
-                if (b == null || !b.isValid() || b.block == null) continue;
+        if (!queryMoved && refreshSettingsVersion == settings.version && Time.time - refreshStartedAt < refreshPeriod * Time.toSeconds) return;
 
-                float s = Math.max(tilesize, b.block.size * tilesize) * buildingScale;
-                float bx = normalizeWorldCoord(b.x);
-                float by = normalizeWorldCoord(b.y);
+        long started = OverlayProfiler.start();
 
-                if (tintBuildingIcons) {
-                    boolean enemy = b.team != player.team();
-                    Draw.color(enemy ? b.team.color : Color.gray, iconBgAlpha);
-                    Fill.rect(bx, by, s * 1.08f, s * 1.08f);
-                }
+        refreshStartedAt = Time.time;
+        refreshSettingsVersion = settings.version;
+        refreshPeriod = visibleRefreshTime;
+        refreshRect.set(viewRect);
 
-                Draw.color(1f, 1f, 1f, iconAlpha);
-                Draw.rect(b.block.uiIcon, bx, by, s, s);
-            }
+        UnitSnapshot candidates = asyncWorker.candidates();
+        candidates.clear();
+        if (settings.enabled && settings.unitsEnabled && player != null && !heatmapActive && (settings.showEnemyUnits || settings.showFriendlyUnits)) {
+            gameInputs.collectUnits(viewRect, settings, candidates);
         }
 
-        Draw.reset();
+        visibleBuildings.clear();
+        if (settings.enabled && settings.buildingsEnabled && player != null && (settings.showEnemyBuildings || settings.showFriendlyBuildings) && !useBuildingLayer()) {
+            if (!buildingIndex.ready()) buildingIndex.rebuild();
+            queryRect.set(viewRect.x, viewRect.y, viewRect.width, viewRect.height);
+            buildingIndex.each(settings.blockEnabledById, queryRect, buildingCollector);
+        }
+        mergeVisibleBuildings();
+        updateTeamColorHash();
+
+        AsyncClusterWorker.Result output = asyncSpare != null ? asyncSpare : new AsyncClusterWorker.Result();
+        asyncSpare = null;
+        int playerTeam = player == null ? -1 : player.team().id;
+        asyncSubmittedGeneration = asyncGeneration;
+        if (!asyncWorker.submit(settings, fog.mask(), playerTeam, viewRect, clusterWorld, interpolationProgress(), asyncShown, output)) {
+            asyncSpare = output;
+        }
+        OverlayProfiler.stop(OverlayProfiler.phaseRefresh, started);
     }
 
-    private static float normalizeWorldCoord(float v) {
-        float step = tilesize / 2f;
-        return Mathf.round(v / step) * step;
+    private static void resetVisibleBuffers() {
+        asyncGeneration++;
+        asyncShown = null;
+        asyncSpare = null;
+        visibleUnits = new UnitSnapshot();
+        pendingUnits = new UnitSnapshot();
+        visiblePyramid = new ClusterPyramid();
+        pendingPyramid = new ClusterPyramid();
+        visibleUnitClusters = visiblePyramid.level(0);
+        visibleBuildings.clear();
+        pendingBuildings.clear();
+        visibleRuns.clear();
+        visibleRevision++;
+        visibleMoving = false;
     }
 
-    private static void buildUnitClusters(float minimapScale) {
-        float scale = Math.max(0.0001f, minimapScale);
-        float clusterWorld = Math.max(0.1f, unitClusterPx / scale);
-        if (clusteredRevision == visibleRevision && Math.abs(clusterWorld - clusteredWorld) <= 0.01f) return;
+    private static void updateTeamColorHash() {
+        if (!settings.enabled || !settings.buildingsEnabled) return;
 
-        clusteredRevision = visibleRevision;
-        clusteredWorld = clusterWorld;
+        int hash = 0;
+        for (int i = 0; i < state.teams.present.size; i++) {
+            hash = hash * 31 + state.teams.present.get(i).team.color.rgba();
+        }
+        teamColorHash = hash;
+    }
 
-        visibleUnitClusters.clear();
-        if (visibleUnits.isEmpty()) return;
+    private static float interpolationProgress() {
+        return Mathf.clamp((Time.time - visibleSnapshotTime) / (refreshPeriod * Time.toSeconds));
+    }
+
+    private static void collectBuilding(Building build) {
+        OverlayProfiler.count(OverlayProfiler.buildingsScanned, 1);
+        if (build == null || !build.isValid() || build.block == null) return;
+        boolean enemy = build.team != player.team();
+        if (enemy && !fog.mask().buildingVisible(build.x, build.y, build.block.size)) return;
+        if (enemy && !settings.showEnemyBuildings) return;
+        if (!enemy && !settings.showFriendlyBuildings) return;
+        if (!queryRect.contains(build.x, build.y)) return;
+        OverlayProfiler.count(OverlayProfiler.buildingsAccepted, 1);
+        buildingTarget.add(build);
+    }
+
+    // Runs never cross a chunk border, so collecting whole chunks around the painted rect gives
+    // every run touching it exactly the shape the neighbouring chunks and the uncached path see.
+    private static void paintBuildingLayer(Rect rect) {
+        layerBuildings.clear();
+        BuildingLayerCache.snapToChunks(queryRect.set(rect));
+        buildingTarget = layerBuildings;
+        buildingIndex.each(settings.blockEnabledById, queryRect, buildingCollector);
+        buildingTarget = visibleBuildings;
+
+        mergeBuildings(layerBuildings, layerRuns);
+        layerBuildings.clear();
+        for (int i = 0; i < layerRuns.size; i++) {
+            float halfW = layerRuns.spanX[i] / 2f, halfH = layerRuns.spanY[i] / 2f;
+            if (layerRuns.x[i] + halfW < rect.x || layerRuns.x[i] - halfW > rect.x + rect.width) continue;
+            if (layerRuns.y[i] + halfH < rect.y || layerRuns.y[i] - halfH > rect.y + rect.height) continue;
+            addBuildingRun(layerRuns, i);
+        }
+        markerBatch.draw(1f);
+    }
 
-        float clusterDst2 = clusterWorld * clusterWorld;
+    private static void updateBuildingLayer(Rect viewRect, float minimapScale) {
+        if (!settings.enabled || !settings.buildingsEnabled || player == null || !useBuildingLayer()) return;
+        if (!buildingIndex.ready()) buildingIndex.rebuild();
 
-        for (int i = 0; i < visibleUnits.size; i++) {
-            Unit u = visibleUnits.get(i);
-            if (u == null || !u.isValid() || u.type == null) continue;
+        int key = settings.version;
+        key = key * 31 + player.team().id;
+        key = key * 31 + teamColorHash;
+        if (key != buildingLayerKey) {
+            buildingLayerKey = key;
+            buildingLayer.invalidateAll();
+        }
 
-            UnitCluster nearest = null;
-            float nearestDst2 = Float.MAX_VALUE;
+        float margin = settings.maxEnabledBlockSize * tilesize * settings.buildingScale * 0.54f + tilesize;
+        buildingLayer.update(viewRect, minimapScale, margin, buildingLayerPainter);
+    }
 
-            for (int j = 0; j < visibleUnitClusters.size; j++) {
-                UnitCluster c = visibleUnitClusters.get(j);
-                if (c.type != u.type || c.team != u.team) continue;
+    // The cached layer is painted once per region, so it cannot follow fog that changes every
+    // fog pass; under fog buildings go through the per-refresh path instead.
+    private static boolean useBuildingLayer() {
+        return buildingLayer.usable() && !fog.active();
+    }
 
-                float dst2 = Mathf.dst2(c.x, c.y, u.x, u.y);
-                if (dst2 <= clusterDst2 && dst2 < nearestDst2) {
-                    nearestDst2 = dst2;
-                    nearest = c;
-                }
+    private static void invalidateBuildingLayer(Building build) {
+        if (build == null || build.block == null) return;
+        buildingLayer.invalidateAround(build.x, build.y);
+    }
+
+    private static void mergeBuildings(Seq<Building> buildings, BuildingRuns out) {
+        mergeScratch.clear();
+        for (int i = 0; i < buildings.size; i++) {
+            Building b = buildings.get(i);
+            if (b == null || !b.isValid() || b.block == null) continue;
+            mergeScratch.add(b.x, b.y, b.block.id, b.block.size, b.team.id, b.tile.pos());
+        }
+        out.build(mergeScratch, tilesize, BuildingLayerCache.span);
+    }
+
+    // Only a publish that changes the merged runs counts as a new revision for the frame cache.
+    private static void mergeVisibleBuildings() {
+        mergeBuildings(visibleBuildings, spareRuns);
+        if (spareRuns.sameAs(visibleRuns)) return;
+
+        BuildingRuns runs = visibleRuns;
+        visibleRuns = spareRuns;
+        spareRuns = runs;
+        visibleRevision++;
+    }
+
+    private static void addBuildingRun(BuildingRuns runs, int i) {
+        Block block = content.block(runs.block[i]);
+        if (block == null) return;
+
+        float s = OverlayEngine.buildingMarkerSize(runs.blockSize[i], settings.buildingScale);
+        float bx = MarkerMath.snapHalfTile(runs.x[i], tilesize);
+        float by = MarkerMath.snapHalfTile(runs.y[i], tilesize);
+
+        if (settings.tintBuildingIcons) {
+            boolean enemy = runs.team[i] != player.team().id;
+            markerBatch.rect(bx, by, runs.spanX[i] + s * 1.08f, runs.spanY[i] + s * 1.08f, enemy ? Team.get(runs.team[i]).color : Color.gray, settings.iconBgAlpha);
+        }
+
+        markerBatch.icon(block.uiIcon, bx, by, s, 0f, settings.iconAlpha);
+    }
+
+    private static void drawMarkers(ViewRect view, float invScale, float minimapScale, float progress) {
+        long started = OverlayProfiler.start();
+        drawMarkersTimed(view, invScale, minimapScale, progress);
+        OverlayProfiler.stop(OverlayProfiler.phaseDrawMarkers, started);
+    }
+
+    private static void drawMarkersTimed(ViewRect view, float invScale, float minimapScale, float progress) {
+        if (!settings.enabled) return;
+        if (world == null || !state.isGame() || world.isGenerating()) return;
+        if (player == null) return;
+
+        if (settings.enabled && settings.unitsEnabled && heatmapActive) {
+            heatmap.draw(settings.unitAlpha);
+        } else if (settings.enabled && settings.unitsEnabled) {
+            buildUnitClusters(minimapScale);
+            Color friendly = Tmp.c1.set(Color.gray);
+            ClusterBuffer clusters = visibleUnitClusters;
+            int playerTeam = player.team().id;
+            float margin = settings.unitSizePx * invScale * 2.8f;
+            cullRect.set(view.x - margin, view.y - margin, view.width + margin * 2f, view.height + margin * 2f);
+            int drawn = markerBudget.select(clusters, playerTeam, settings.markerBudget, cullRect);
+            for (int n = 0; n < drawn; n++) {
+                int i = markerBudget.get(n);
+                UnitType type = content.unit(clusters.type[i]);
+                if (type == null) continue;
+                boolean enemy = clusters.team[i] != playerTeam;
+                Color c = enemy ? Team.get(clusters.team[i]).color : friendly;
+                addUnitCluster(clusters, i, type, c, invScale, progress, drawn);
             }
+            markerBatch.draw(Math.max(0.5f, invScale));
+        }
 
-            if (nearest == null) {
-                visibleUnitClusters.add(new UnitCluster(u));
+        if (settings.enabled && settings.buildingsEnabled) {
+            if (useBuildingLayer()) {
+                OverlayProfiler.count(OverlayProfiler.drawCalls, buildingLayer.draw(viewRect));
             } else {
-                nearest.add(u);
+                float margin = settings.maxEnabledBlockSize * tilesize * settings.buildingScale;
+                for (int i = 0; i < visibleRuns.size; i++) {
+                    float halfW = visibleRuns.spanX[i] / 2f + margin, halfH = visibleRuns.spanY[i] / 2f + margin;
+                    cullRect.set(visibleRuns.x[i] - halfW, visibleRuns.y[i] - halfH, halfW * 2f, halfH * 2f);
+                    if (cullRect.overlaps(view)) addBuildingRun(visibleRuns, i);
+                }
+                markerBatch.draw(1f);
             }
         }
+
+        Draw.reset();
     }
 
-    private static void drawUnitCluster(UnitCluster c, Color color, float invScale) {
-        float sizeMul = c.count <= 1 ? 1f : Mathf.clamp(1f + 0.22f * Mathf.sqrt(c.count - 1f), 1f, 2.8f);
-        float iconSize = unitSizePx * invScale * sizeMul;
+    private static void buildUnitClusters(float minimapScale) {
+        long started = OverlayProfiler.start();
+        int built = visiblePyramid.builtClusters();
+        visibleUnitClusters = visiblePyramid.cutStable(clusterWorld(minimapScale));
+        OverlayProfiler.count(OverlayProfiler.clustersProduced, visiblePyramid.builtClusters() - built);
+        OverlayProfiler.stop(OverlayProfiler.phaseCluster, started);
+    }
+
+    private static float clusterWorld(float minimapScale) {
+        return OverlayEngine.clusterWorld(settings.unitClusterPx, minimapScale);
+    }
+
+    private static void addUnitCluster(ClusterBuffer clusters, int i, UnitType type, Color color, float invScale, float progress, int drawn) {
+        int count = clusters.count[i];
+        float iconSize = OverlayEngine.unitMarkerSize(count, settings.unitSizePx, invScale);
         if (iconSize <= 0.001f) return;
 
-        float a = unitAlpha;
-        Draw.color(color, a * 0.20f);
-        Fill.circle(c.x, c.y, iconSize * 0.62f);
+        float cx = MarkerMath.lerp(clusters.prevX[i], clusters.x[i], progress);
+        float cy = MarkerMath.lerp(clusters.prevY[i], clusters.y[i], progress);
+        float a = settings.unitAlpha;
+        int tier = MarkerBudget.tier(MarkerBudget.screenSizePx(count, settings.unitSizePx), drawn);
+        if (tier == MarkerBudget.tierDot) {
+            markerBatch.rect(cx, cy, Math.max(iconSize * 0.6f, 1.5f * invScale), color, a);
+            return;
+        }
 
-        Draw.color(1f, 1f, 1f, a);
-        Draw.rect(c.type.uiIcon, c.x, c.y, iconSize, iconSize, c.rotation() - 90f);
+        float rotation = MarkerMath.lerpAngle(clusters.prevRotation(i), clusters.rotation(i), progress);
+        if (tier == MarkerBudget.tierFull) markerBatch.circle(cx, cy, iconSize * 0.62f, color, a * 0.20f);
+        markerBatch.icon(type.uiIcon, cx, cy, iconSize, rotation - 90f, a);
+        if (tier == MarkerBudget.tierFull) markerBatch.outline(cx, cy, iconSize * 0.58f, Color.black, 0.20f * a);
+    }
 
-        Draw.color(Color.black, 0.20f * a);
-        Lines.stroke(Math.max(0.5f, invScale));
-        Lines.circle(c.x, c.y, iconSize * 0.58f);
-        Draw.reset();
+    private static ViewRect computeViewRect() {
+        return OverlayEngine.computeViewRect(gameInputs, overlayView);
     }
 
-    private static Rect computeViewRect() {
-        float zoom = renderer.minimap.getZoom();
-        float sz = minimapBaseSize * zoom;
-        float dx = (Core.camera.position.x / tilesize);
-        float dy = (Core.camera.position.y / tilesize);
-        dx = Mathf.clamp(dx, sz, world.width() - sz);
-        dy = Mathf.clamp(dy, sz, world.height() - sz);
+    private static void stepMapOverlay(ViewRect query, boolean queryMoved, float minimapScale) {
+        updateHeatmapMode();
+        lastQuery.set(query);
 
-        viewRect.set((dx - sz) * tilesize, (dy - sz) * tilesize, sz * 2f * tilesize, sz * 2f * tilesize);
-        return viewRect;
+        float clusterWorld = clusterWorld(minimapScale);
+        boolean async = settings.asyncClustering && asyncWorker.available();
+        if (async != asyncActive) {
+            abortVisibleRefresh();
+            resetVisibleBuffers();
+            asyncActive = async;
+        }
+        if (asyncActive) stepAsyncRefresh(query, clusterWorld, queryMoved);
+        else stepVisibleRefresh(query, clusterWorld, queryMoved);
     }
 
-    private static void showUnitFilterDialog() {
-        BaseDialog dialog = new BaseDialog(Core.bundle.get("mmplus.units.title"));
-        dialog.addCloseButton();
-
-        Seq<String> enabled = Core.settings.getJson(keyUnitList, Seq.class, String.class, Seq::new);
-        ObjectSet<String> enabledSet = new ObjectSet<>();
-        enabled.each(v -> enabledSet.add((String) v));
-
-        Seq<UnitType> all = content.units().copy();
-        Seq<UnitType> filtered = new Seq<>();
-
-        Table grid = new Table();
-
-        Runnable commit = () -> {
-            enabled.clear();
-            enabledSet.each(v -> enabled.add((String) v));
-            Core.settings.putJson(keyUnitList, String.class, enabled);
-            rebuildUnitFilterCache();
-        };
-
-        dialog.cont.table(top -> {
-            top.left();
-            top.add(Core.bundle.get("mmplus.search")).padRight(6f);
-            TextField search = top.field("", t -> { }).growX().get();
-            search.setMessageText(Core.bundle.get("mmplus.search.hint"));
-
-            top.button(Icon.ok, Styles.cleari, () -> {
-                enabledSet.clear();
-                for (UnitType t : all) enabledSet.add(t.name);
-                commit.run();
-            }).size(44f).tooltip(Core.bundle.get("mmplus.allon"));
-
-            top.button(Icon.cancel, Styles.cleari, () -> {
-                enabledSet.clear();
-                commit.run();
-            }).size(44f).tooltip(Core.bundle.get("mmplus.alloff"));
-
-            top.button(Icon.refresh, Styles.cleari, () -> {
-                for (UnitType t : all) {
-                    if (enabledSet.contains(t.name)) enabledSet.remove(t.name);
-                    else enabledSet.add(t.name);
-                }
-                commit.run();
-            }).size(44f).tooltip(Core.bundle.get("mmplus.invert"));
-
-            top.row();
-            top.image().color(Pal.gray).height(4f).growX().padTop(6f);
-
-            search.changed(() -> {
-                filtered.clear();
-                String q = search.getText();
-                if (q == null) q = "";
-                q = q.trim().toLowerCase();
-                for (UnitType t : all) {
-                    if (q.isEmpty()) {
-                        filtered.add(t);
-                    } else {
-                        String n1 = t.localizedName == null ? "" : t.localizedName.toLowerCase();
-                        String n2 = t.name == null ? "" : t.name.toLowerCase();
-                        if (n1.contains(q) || n2.contains(q)) filtered.add(t);
-                    }
-                }
-                buildUnitGrid(grid, filtered, enabledSet, commit);
-            });
-        }).growX().row();
+    // What the HUD overlay does each frame short of drawing, for the stress driver, which has no
+    // HUD: steps the visible refresh for `query` (publishing it once done) and cuts the clusters
+    // the markers would be drawn from.
+    static ClusterBuffer refreshOverlay(ViewRect query, float minimapScale) {
+        stepMapOverlay(query, false, minimapScale);
+        if (player != null && !heatmapActive) buildUnitClusters(minimapScale);
+        return visibleUnitClusters;
+    }
 
-        dialog.cont.pane(Styles.noBarPane, grid).grow().with(p -> p.setForceScroll(true, true)).row();
+    static SettingsSnapshot currentSettings() {
+        return settings;
+    }
 
-        filtered.set(all);
-        buildUnitGrid(grid, filtered, enabledSet, commit);
+    static int visibleBuildingRuns() {
+        return visibleRuns.size;
+    }
 
-        dialog.show();
+    static boolean fogActive() {
+        return fog.active();
     }
 
-    private static void buildUnitGrid(Table grid, Seq<UnitType> types, ObjectSet<String> enabledSet, Runnable commit) {
-        grid.clear();
-        int col = Math.max(1, Mathf.floor(Core.scene.getWidth() / Scl.scl(180f)));
-        int i = 0;
+    private static void drawMapMarkers(ViewRect view, float originX, float originY, float scaleX, float scaleY) {
+        float minimapScale = Math.min(scaleX, scaleY);
+        float invScale = 1f / minimapScale;
+        float progress = interpolationProgress();
 
-        for (UnitType t : types) {
-            TextButton button = new TextButton(t.localizedName, Styles.flatToggleMenut);
-            button.add(new arc.scene.ui.Image(t.uiIcon)).size(32f).pad(8f);
-            button.getCells().reverse();
-            button.clicked(() -> {
-                if (enabledSet.contains(t.name)) enabledSet.remove(t.name);
-                else enabledSet.add(t.name);
-                commit.run();
-            });
-            grid.add(button).size(170f, 100f).pad(4f).update(tb -> tb.setChecked(enabledSet.contains(t.name)));
-            if (++i % col == 0) grid.row();
-        }
-    }
+        oldTransform.set(Draw.trans());
 
-    private static void showBlockFilterDialog() {
-        BaseDialog dialog = new BaseDialog(Core.bundle.get("mmplus.blocks.title"));
-        dialog.addCloseButton();
-
-        Seq<String> enabled = Core.settings.getJson(keyBlockList, Seq.class, String.class, Seq::new);
-        ObjectSet<String> enabledSet = new ObjectSet<>();
-        enabled.each(v -> enabledSet.add((String) v));
-
-        Seq<Block> all = content.blocks().select(Block::hasBuilding);
-        Seq<Block> filtered = new Seq<>();
-
-        Table grid = new Table();
-
-        Runnable commit = () -> {
-            enabled.clear();
-            enabledSet.each(v -> enabled.add((String) v));
-            Core.settings.putJson(keyBlockList, String.class, enabled);
-            rebuildBlockFilterCache();
-        };
-
-        dialog.cont.table(top -> {
-            top.left();
-            top.add(Core.bundle.get("mmplus.search")).padRight(6f);
-            TextField search = top.field("", t -> { }).growX().get();
-            search.setMessageText(Core.bundle.get("mmplus.search.hint"));
-
-            top.button(Icon.ok, Styles.cleari, () -> {
-                enabledSet.clear();
-                for (Block b : all) enabledSet.add(b.name);
-                commit.run();
-            }).size(44f).tooltip(Core.bundle.get("mmplus.allon"));
-
-            top.button(Icon.cancel, Styles.cleari, () -> {
-                enabledSet.clear();
-                commit.run();
-            }).size(44f).tooltip(Core.bundle.get("mmplus.alloff"));
-
-            top.button(Icon.refresh, Styles.cleari, () -> {
-                for (Block b : all) {
-                    if (enabledSet.contains(b.name)) enabledSet.remove(b.name);
-                    else enabledSet.add(b.name);
-                }
-                commit.run();
-            }).size(44f).tooltip(Core.bundle.get("mmplus.invert"));
-
-            top.row();
-            top.image().color(Pal.gray).height(4f).growX().padTop(6f);
-
-            search.changed(() -> {
-                filtered.clear();
-                String q = search.getText();
-                if (q == null) q = "";
-                q = q.trim().toLowerCase();
-                for (Block b : all) {
-                    if (q.isEmpty()) {
-                        filtered.add(b);
-                    } else {
-                        String n1 = b.localizedName == null ? "" : b.localizedName.toLowerCase();
-                        String n2 = b.name == null ? "" : b.name.toLowerCase();
-                        if (n1.contains(q) || n2.contains(q)) filtered.add(b);
-                    }
-                }
-                buildBlockGrid(grid, filtered, enabledSet, commit);
-            });
-        }).growX().row();
+        transform.set(oldTransform);
+        transform.translate(originX, originY);
+        transform.scl(Tmp.v1.set(scaleX, scaleY));
+        transform.translate(tilesize / 2f, tilesize / 2f);
+        Draw.trans(transform);
 
-        dialog.cont.pane(Styles.noBarPane, grid).grow().with(p -> p.setForceScroll(true, true)).row();
+        drawMarkers(view, invScale, minimapScale, progress);
 
-        filtered.set(all);
-        buildBlockGrid(grid, filtered, enabledSet, commit);
+        Draw.trans(oldTransform);
+        Draw.reset();
+    }
 
-        dialog.show();
+    // Everything a settled overlay frame depends on, compared field by field. The origin is where
+    // world (0, 0) lands relative to the cached rect, in whole pixels; `extentX`/`extentY` is
+    // whatever else sizes the view. Interpolation is not part of it: frames still interpolating are
+    // never cached.
+    private static int[] overlayFrameKey(float originX, float originY, float extentX, float extentY, float scaleX, float scaleY) {
+        int[] key = overlayFrameKey;
+        key[0] = visibleRevision;
+        key[1] = settings.version;
+        key[2] = Float.floatToIntBits(originX);
+        key[3] = Float.floatToIntBits(originY);
+        key[4] = Float.floatToIntBits(extentX);
+        key[5] = Float.floatToIntBits(extentY);
+        key[6] = Float.floatToIntBits(scaleX);
+        key[7] = Float.floatToIntBits(scaleY);
+        key[8] = player.team().id;
+        key[9] = teamColorHash;
+        key[10] = buildingLayer.revision();
+        key[11] = heatmapActive ? heatmap.revision() : -1;
+        return key;
     }
 
-    private static void buildBlockGrid(Table grid, Seq<Block> blocks, ObjectSet<String> enabledSet, Runnable commit) {
-        grid.clear();
-        int col = Math.max(1, Mathf.floor(Core.scene.getWidth() / Scl.scl(180f)));
-        int i = 0;
+    private static boolean overlaySettled() {
+        return !visibleMoving || interpolationProgress() >= 1f;
+    }
 
-        for (Block b : blocks) {
-            TextButton button = new TextButton(b.localizedName, Styles.flatToggleMenut);
-            button.add(new arc.scene.ui.Image(b.uiIcon)).size(32f).pad(8f);
-            button.getCells().reverse();
-            button.clicked(() -> {
-                if (enabledSet.contains(b.name)) enabledSet.remove(b.name);
-                else enabledSet.add(b.name);
-                commit.run();
-            });
-            grid.add(button).size(170f, 100f).pad(4f).update(tb -> tb.setChecked(enabledSet.contains(b.name)));
-            if (++i % col == 0) grid.row();
+    private static void setFrame(ViewRect view, float originX, float originY, float scaleX, float scaleY) {
+        frameView = view;
+        frameOriginX = originX;
+        frameOriginY = originY;
+        frameScaleX = scaleX;
+        frameScaleY = scaleY;
+    }
+
+    private static void paintOverlayFrame() {
+        drawMapMarkers(frameView, frameOriginX, frameOriginY, frameScaleX, frameScaleY);
+    }
+
+    private static void updateHeatmapMode() {
+        int threshold = settings.heatmapThreshold;
+        int total = Groups.unit.size();
+        boolean active = threshold > 0 && settings.unitsEnabled && player != null && heatmap.usable()
+            && (heatmapActive ? total * 10 >= threshold * 9 : total > threshold);
+        if (active != heatmapActive) {
+            heatmapActive = active;
+            abortVisibleRefresh();
         }
+        if (heatmapActive) heatmap.update(gameInputs, settings, player.team().id);
+    }
+
+    private static void showUnitFilterDialog() {
+        if (unitSearch == null) unitSearch = new ContentSearchIndex(content.units());
+        FilterDialog.show(Core.bundle.get("mmplus.units.title"), unitSearch, unitList);
+    }
+
+    private static void showBlockFilterDialog() {
+        if (blockSearch == null) blockSearch = new ContentSearchIndex(content.blocks().select(Block::hasBuilding));
+        FilterDialog.show(Core.bundle.get("mmplus.blocks.title"), blockSearch, blockList);
     }
 
     private static class HudMinimapOverlay extends Element {
@@ -623,74 +939,125 @@ public class BetterMiniMapFeature {
 
         @Override
         public void draw() {
-            if (!enabled) return;
+            if (!settings.enabled) return;
+
+            long started = OverlayProfiler.start();
+            drawOverlay();
+            OverlayProfiler.stop(OverlayProfiler.phaseOverlayDraw, started);
+        }
+
+        private void drawOverlay() {
             if (ui == null || ui.hudfrag == null || !ui.hudfrag.shown) return;
             if (ui.minimapfrag != null && ui.minimapfrag.shown()) return;
             if (renderer == null || renderer.minimap == null || renderer.minimap.getRegion() == null) return;
             if (world == null || !state.isGame() || world.isGenerating()) return;
             if (Core.camera == null) return;
 
-            if (!clipBegin()) return;
-
-            Rect r = computeViewRect();
+            ViewRect r = computeViewRect();
             float scaleX = width / r.width;
             float scaleY = height / r.height;
-            float minimapScale = Math.min(scaleX, scaleY);
-            float invScale = 1f / minimapScale;
 
-            if (interval.check(idVisible, visibleRefreshTime)) rebuildVisibleCache(r);
-
-            oldTransform.set(Draw.trans());
+            viewRect.set(r.x, r.y, r.width, r.height);
+            updateBuildingLayer(viewRect, Math.min(scaleX, scaleY));
+
+            stepMapOverlay(r, false, Math.min(scaleX, scaleY));
+            if (player == null) return;
+
+            // The cached frame is keyed and painted at whole minimap pixels, so sub-pixel camera drift
+            // does not repaint it, and blitted back by the remainder to where a direct draw would put it.
+            // Interpolating frames differ every frame; painting them into the buffer could never pay off.
+            if (overlaySettled()) {
+                ViewRect snapped = frameRect.set(Math.round(r.x * scaleX) / scaleX, Math.round(r.y * scaleY) / scaleY, r.width, r.height);
+                setFrame(snapped, x - snapped.x * scaleX, y - snapped.y * scaleY, scaleX, scaleY);
+                int[] key = overlayFrameKey(-snapped.x * scaleX, -snapped.y * scaleY, r.width, r.height, scaleX, scaleY);
+                float offsetX = (snapped.x - r.x) * scaleX, offsetY = (snapped.y - r.y) * scaleY;
+                if (hudFrame.draw(key, x, y, width, height, offsetX, offsetY, overlayFramePainter)) return;
+            }
 
-            transform.set(oldTransform);
-            transform.translate(x, y);
-            transform.scl(Tmp.v1.set(scaleX, scaleY));
-            transform.translate(-r.x, -r.y);
-            transform.translate(tilesize / 2f, tilesize / 2f);
-            Draw.trans(transform);
+            setFrame(r, x - r.x * scaleX, y - r.y * scaleY, scaleX, scaleY);
+            if (!clipBegin()) return;
+            paintOverlayFrame();
+            clipEnd();
+        }
+    }
 
-            drawMarkers(invScale, minimapScale);
+    // Lays out like SettingsTable.sliderPref, but marks the settings dirty from the slider's change
+    // listener rather than from the label formatter, which Arc may call at any time.
+    private static class SliderPref extends SettingsMenuDialog.SettingsTable.Setting {
+        private final int min;
+        private final int max;
+        private final int step;
+        private final SettingsMenuDialog.StringProcessor label;
+
+        SliderPref(String name, int def, int min, int max, int step, SettingsMenuDialog.StringProcessor label) {
+            super(name);
+            this.min = min;
+            this.max = max;
+            this.step = step;
+            this.label = label;
+            Core.settings.defaults(name, def);
+        }
 
-            Draw.trans(oldTransform);
-            Draw.reset();
+        @Override
+        public void add(SettingsMenuDialog.SettingsTable table) {
+            Slider slider = new Slider(min, max, step, false);
+            slider.setValue(Core.settings.getInt(name));
+
+            Label value = new Label(label.get((int) slider.getValue()), Styles.outlineLabel);
+            Table content = new Table();
+            content.add(title, Styles.outlineLabel).left().growX().wrap();
+            content.add(value).padLeft(10f).right();
+            content.margin(3f, 33f, 3f, 33f);
+            content.touchable = Touchable.disabled;
+
+            slider.changed(() -> {
+                int v = (int) slider.getValue();
+                value.setText(label.get(v));
+                if (Core.settings.getInt(name) == v) return;
+                Core.settings.put(name, v);
+                markSettingsDirty();
+            });
 
-            clipEnd();
+            addDesc(table.stack(slider, content).width(Math.min(Core.graphics.getWidth() / 1.2f, 460f)).left().padTop(4f).get());
+            table.row();
         }
     }
 
-    private static class UnitCluster {
-        final UnitType type;
-        final Team team;
-        float x;
-        float y;
-        float dirx;
-        float diry;
-        float fallbackRotation;
-        int count;
-
-        UnitCluster(Unit u) {
-            type = u.type;
-            team = u.team;
-            x = u.x;
-            y = u.y;
-            dirx = Angles.trnsx(u.rotation, 1f);
-            diry = Angles.trnsy(u.rotation, 1f);
-            fallbackRotation = u.rotation;
-            count = 1;
-        }
-
-        void add(Unit u) {
-            count++;
-            x += (u.x - x) / count;
-            y += (u.y - y) / count;
-            dirx += Angles.trnsx(u.rotation, 1f);
-            diry += Angles.trnsy(u.rotation, 1f);
-            fallbackRotation = u.rotation;
-        }
-
-        float rotation() {
-            if (Math.abs(dirx) + Math.abs(diry) < 0.0001f) return fallbackRotation;
-            return Mathf.angle(dirx, diry);
+    private static class FullMapOverlay extends Element {
+        @Override
+        public void draw() {
+            if (!settings.enabled || !settings.fullMapEnabled) return;
+
+            long started = OverlayProfiler.start();
+            drawOverlay();
+            OverlayProfiler.stop(OverlayProfiler.phaseOverlayDraw, started);
+        }
+
+        private void drawOverlay() {
+            if (ui == null || ui.minimapfrag == null || !ui.minimapfrag.shown()) return;
+            if (renderer == null || renderer.minimap == null || renderer.minimap.getTexture() == null) return;
+            if (world == null || !state.isGame() || world.isGenerating()) return;
+            if (!fullMap.update()) return;
+
+            boolean moved = fullMap.queryMoved || !refreshRect.contains(fullMap.view);
+            ViewRect view = fullMap.view;
+            float scale = fullMap.scale;
+            viewRect.set(view.x, view.y, view.width, view.height);
+            updateBuildingLayer(viewRect, scale);
+            stepMapOverlay(fullMap.query, moved, scale);
+
+            // Cached like the HUD overlay, over the whole screen the map fragment draws on. The view
+            // is a function of the origin, scale and screen size, so those key it; it differs from the
+            // one at the snapped origin by under a pixel, which the culling margins absorb.
+            if (player != null && overlaySettled()) {
+                float w = Core.graphics.getWidth(), h = Core.graphics.getHeight();
+                float snappedX = Math.round(fullMap.originX), snappedY = Math.round(fullMap.originY);
+                setFrame(view, snappedX, snappedY, scale, scale);
+                int[] key = overlayFrameKey(snappedX, snappedY, w, h, scale, scale);
+                if (fullMapFrame.draw(key, 0f, 0f, w, h, fullMap.originX - snappedX, fullMap.originY - snappedY, overlayFramePainter)) return;
+            }
+
+            drawMapMarkers(view, fullMap.originX, fullMap.originY, scale, scale);
         }
     }
 }
@@ -0,0 +1,131 @@
+package betterminimap.features;
+
+import arc.func.Cons;
+import arc.math.Mathf;
+import arc.math.geom.Rect;
+import arc.struct.IntSeq;
+import arc.struct.ObjectIntMap;
+import arc.struct.Seq;
+import mindustry.gen.Building;
+import mindustry.world.Tile;
+
+import static mindustry.Vars.content;
+import static mindustry.Vars.tilesize;
+import static mindustry.Vars.world;
+
+final class BuildingIndex {
+    static final int chunkSize = 32;
+
+    // Each indexed building's position in its chunk list, so removal is a swap with the last entry.
+    private final ObjectIntMap<Building> slots = new ObjectIntMap<>();
+    private final IntSeq populatedBlocks = new IntSeq();
+
+    private Seq<Building>[][] chunksByBlock;
+    private int chunksX;
+    private int chunksY;
+    private boolean ready;
+
+    boolean ready() {
+        return ready;
+    }
+
+    void clear() {
+        slots.clear();
+        populatedBlocks.clear();
+        chunksByBlock = null;
+        chunksX = chunksY = 0;
+        ready = false;
+    }
+
+    @SuppressWarnings("unchecked")
+    void rebuild() {
+        clear();
+        if (world == null || world.tiles == null || world.width() <= 0 || world.height() <= 0) return;
+
+        chunksX = Mathf.ceil(world.width() / (float) chunkSize);
+        chunksY = Mathf.ceil(world.height() / (float) chunkSize);
+        chunksByBlock = new Seq[content.blocks().size][];
+
+        for (Tile tile : world.tiles) {
+            if (tile.build != null && tile.isCenter()) add(tile.build);
+        }
+        ready = true;
+    }
+
+    void add(Building build) {
+        if (chunksByBlock == null) return;
+        if (build == null || build.block == null || build.tile == null) return;
+
+        int blockId = build.block.id;
+        if (blockId < 0 || blockId >= chunksByBlock.length) return;
+        if (slots.containsKey(build)) return;
+
+        Seq<Building>[] chunks = chunksByBlock[blockId];
+        if (chunks == null) {
+            chunks = chunksByBlock[blockId] = newChunks();
+            populatedBlocks.add(blockId);
+        }
+
+        int chunk = chunkOf(build.tile.x, build.tile.y);
+        if (chunks[chunk] == null) chunks[chunk] = new Seq<>(false, 16);
+        slots.put(build, chunks[chunk].size);
+        chunks[chunk].add(build);
+    }
+
+    void remove(Building build) {
+        if (chunksByBlock == null || build == null || build.block == null || build.tile == null) return;
+        int slot = slots.remove(build, -1);
+        if (slot < 0) return;
+
+        int blockId = build.block.id;
+        if (blockId < 0 || blockId >= chunksByBlock.length) return;
+
+        Seq<Building>[] chunks = chunksByBlock[blockId];
+        if (chunks == null) return;
+
+        Seq<Building> list = chunks[chunkOf(build.tile.x, build.tile.y)];
+        if (list == null || slot >= list.size || list.get(slot) != build) return;
+
+        Building last = list.pop();
+        if (last != build) {
+            list.set(slot, last);
+            slots.put(last, slot);
+        }
+    }
+
+    void each(boolean[] blockEnabledById, Rect worldRect, Cons<Building> cons) {
+        if (chunksByBlock == null) return;
+
+        int minX = Mathf.clamp(Mathf.floor(worldRect.x / tilesize / chunkSize), 0, chunksX - 1);
+        int minY = Mathf.clamp(Mathf.floor(worldRect.y / tilesize / chunkSize), 0, chunksY - 1);
+        int maxX = Mathf.clamp(Mathf.floor((worldRect.x + worldRect.width) / tilesize / chunkSize), 0, chunksX - 1);
+        int maxY = Mathf.clamp(Mathf.floor((worldRect.y + worldRect.height) / tilesize / chunkSize), 0, chunksY - 1);
+
+        for (int i = 0; i < populatedBlocks.size; i++) {
+            int blockId = populatedBlocks.get(i);
+            if (blockId >= blockEnabledById.length || !blockEnabledById[blockId]) continue;
+
+            Seq<Building>[] chunks = chunksByBlock[blockId];
+            for (int cy = minY; cy <= maxY; cy++) {
+                for (int cx = minX; cx <= maxX; cx++) {
+                    Seq<Building> list = chunks[cx + cy * chunksX];
+                    if (list == null) continue;
+                    for (int j = 0; j < list.size; j++) {
+                        cons.get(list.get(j));
+                    }
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Seq<Building>[] newChunks() {
+        return new Seq[chunksX * chunksY];
+    }
+
+    private int chunkOf(int tileX, int tileY) {
+        int cx = Mathf.clamp(tileX / chunkSize, 0, chunksX - 1);
+        int cy = Mathf.clamp(tileY / chunkSize, 0, chunksY - 1);
+        return cx + cy * chunksX;
+    }
+}
@@ -0,0 +1,256 @@
+package betterminimap.features;
+
+import arc.func.Cons;
+import arc.graphics.Blending;
+import arc.graphics.Color;
+import arc.graphics.Gl;
+import arc.graphics.Texture;
+import arc.graphics.g2d.Draw;
+import arc.graphics.g2d.TextureRegion;
+import arc.graphics.gl.FrameBuffer;
+import arc.math.Mathf;
+import arc.math.Mat;
+import arc.math.geom.Rect;
+import arc.struct.Seq;
+import arc.util.Log;
+
+import static mindustry.Vars.tilesize;
+
+final class BuildingLayerCache {
+    static final int span = BuildingIndex.chunkSize;
+
+    private static final Blending premultiplied = new Blending(Gl.one, Gl.oneMinusSrcAlpha);
+    private static final int maxRendersPerFrame = 4;
+    private static final int maxFirstRendersPerFrame = 16;
+    private static final int spareLayers = 8;
+    private static final int maxPixelsPerTile = 16;
+
+    private final Seq<Layer> layers = new Seq<>(false, 16);
+    private final Mat proj = new Mat();
+    private final Mat savedProj = new Mat();
+    private final Mat savedTrans = new Mat();
+    private final Mat identity = new Mat();
+    private final Rect paintRect = new Rect();
+
+    private FrameBuffer rendering;
+    private Layer[] byChunk = new Layer[0];
+    private int chunksX;
+    private int chunksY;
+    private int pixelsPerTile;
+    private long frame;
+    private int revision;
+    private boolean failed;
+
+    boolean usable() {
+        return !failed;
+    }
+
+    int revision() {
+        return revision;
+    }
+
+    void reset(int worldWidth, int worldHeight) {
+        dispose();
+        chunksX = Math.max(1, Mathf.ceil(worldWidth / (float) span));
+        chunksY = Math.max(1, Mathf.ceil(worldHeight / (float) span));
+        byChunk = new Layer[chunksX * chunksY];
+    }
+
+    void invalidateAll() {
+        for (int i = 0; i < layers.size; i++) {
+            layers.get(i).dirty = true;
+        }
+    }
+
+    void invalidate(float x, float y, float halfExtent) {
+        if (layers.isEmpty()) return;
+
+        int minX = chunkX(x - halfExtent), maxX = chunkX(x + halfExtent);
+        int minY = chunkY(y - halfExtent), maxY = chunkY(y + halfExtent);
+        for (int cy = minY; cy <= maxY; cy++) {
+            for (int cx = minX; cx <= maxX; cx++) {
+                Layer layer = byChunk[cx + cy * chunksX];
+                if (layer != null) layer.dirty = true;
+            }
+        }
+    }
+
+    // A changed building can reshape any run in its chunk, and those runs' markers reach into
+    // the neighbouring chunks' margins, so all nine are repainted.
+    void invalidateAround(float x, float y) {
+        invalidate(x, y, span * tilesize);
+    }
+
+    static Rect snapToChunks(Rect rect) {
+        float size = span * tilesize;
+        float minX = Mathf.floor((rect.x + tilesize / 2f) / size) * size - tilesize / 2f;
+        float minY = Mathf.floor((rect.y + tilesize / 2f) / size) * size - tilesize / 2f;
+        float maxX = Mathf.ceil((rect.x + rect.width + tilesize / 2f) / size) * size - tilesize / 2f;
+        float maxY = Mathf.ceil((rect.y + rect.height + tilesize / 2f) / size) * size - tilesize / 2f;
+        return rect.set(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    void update(Rect view, float minimapScale, float margin, Cons<Rect> painter) {
+        if (failed || byChunk.length == 0) return;
+        frame++;
+
+        int ppt = Mathf.clamp(Mathf.nextPowerOfTwo(Mathf.ceil(minimapScale * tilesize)), 1, maxPixelsPerTile);
+        if (ppt != pixelsPerTile) {
+            pixelsPerTile = ppt;
+            invalidateAll();
+        }
+
+        int minX = chunkX(view.x - tilesize), maxX = chunkX(view.x + view.width);
+        int minY = chunkY(view.y - tilesize), maxY = chunkY(view.y + view.height);
+        int visible = (maxX - minX + 1) * (maxY - minY + 1);
+
+        int renders = 0;
+        boolean began = false;
+        try {
+            for (int cy = minY; cy <= maxY; cy++) {
+                for (int cx = minX; cx <= maxX; cx++) {
+                    int chunk = cx + cy * chunksX;
+                    Layer layer = byChunk[chunk];
+                    if (layer == null) layer = obtain(chunk, visible);
+                    layer.usedFrame = frame;
+
+                    if (!layer.dirty && layer.size == pixelsPerTile * span) continue;
+                    // Chunks never rendered leave a hole, so they get a larger share, but still a
+                    // bounded one: a fresh whole-map view would otherwise render every chunk at once.
+                    if (renders >= (layer.rendered ? maxRendersPerFrame : maxFirstRendersPerFrame)) continue;
+
+                    if (!began) {
+                        Draw.flush();
+                        savedProj.set(Draw.proj());
+                        savedTrans.set(Draw.trans());
+                        Draw.trans(identity.idt());
+                        began = true;
+                    }
+                    render(layer, cx, cy, margin, painter);
+                    renders++;
+                }
+            }
+        } catch (Throwable t) {
+            failed = true;
+            Log.err("[betterminimap] Building layer cache disabled", t);
+            if (rendering != null) rendering.end();
+            rendering = null;
+            dispose();
+        } finally {
+            if (began) {
+                Draw.proj(savedProj);
+                Draw.trans(savedTrans);
+            }
+        }
+    }
+
+    int draw(Rect view) {
+        if (failed || byChunk.length == 0) return 0;
+
+        int minX = chunkX(view.x - tilesize), maxX = chunkX(view.x + view.width);
+        int minY = chunkY(view.y - tilesize), maxY = chunkY(view.y + view.height);
+        float size = span * tilesize;
+
+        int drawn = 0;
+        Draw.blend(premultiplied);
+        Draw.color();
+        for (int cy = minY; cy <= maxY; cy++) {
+            for (int cx = minX; cx <= maxX; cx++) {
+                Layer layer = byChunk[cx + cy * chunksX];
+                if (layer == null || !layer.rendered) continue;
+                Draw.rect(layer.region, originX(cx) + size / 2f, originY(cy) + size / 2f, size, -size);
+                drawn++;
+            }
+        }
+        Draw.blend();
+        return drawn;
+    }
+
+    void dispose() {
+        for (int i = 0; i < layers.size; i++) {
+            layers.get(i).buffer.dispose();
+        }
+        layers.clear();
+        for (int i = 0; i < byChunk.length; i++) byChunk[i] = null;
+    }
+
+    private Layer obtain(int chunk, int visible) {
+        Layer layer = null;
+        if (layers.size >= visible + spareLayers) {
+            for (int i = 0; i < layers.size; i++) {
+                Layer l = layers.get(i);
+                if (l.usedFrame == frame) continue;
+                if (layer == null || l.usedFrame < layer.usedFrame) layer = l;
+            }
+        }
+
+        if (layer == null) {
+            layer = new Layer();
+            layers.add(layer);
+        } else {
+            byChunk[layer.chunk] = null;
+        }
+
+        layer.chunk = chunk;
+        layer.dirty = true;
+        layer.rendered = false;
+        byChunk[chunk] = layer;
+        return layer;
+    }
+
+    private void render(Layer layer, int cx, int cy, float margin, Cons<Rect> painter) {
+        int size = pixelsPerTile * span;
+        if (layer.buffer == null) {
+            layer.buffer = new FrameBuffer(size, size);
+            layer.region = new TextureRegion();
+        } else if (layer.size != size) {
+            layer.buffer.resize(size, size);
+        }
+        if (layer.size != size || layer.region.texture != layer.buffer.getTexture()) {
+            layer.buffer.getTexture().setFilter(Texture.TextureFilter.linear);
+            layer.region.set(layer.buffer.getTexture());
+        }
+        layer.size = size;
+
+        float worldSize = span * tilesize;
+        float ox = originX(cx), oy = originY(cy);
+
+        layer.buffer.begin(Color.clear);
+        rendering = layer.buffer;
+        Draw.proj(proj.setOrtho(ox, oy, worldSize, worldSize));
+        painter.get(paintRect.set(ox - margin, oy - margin, worldSize + margin * 2f, worldSize + margin * 2f));
+        Draw.flush();
+        layer.buffer.end();
+        rendering = null;
+
+        layer.dirty = false;
+        layer.rendered = true;
+        revision++;
+    }
+
+    private int chunkX(float x) {
+        return Mathf.clamp(Mathf.floor((x + tilesize / 2f) / (span * tilesize)), 0, chunksX - 1);
+    }
+
+    private int chunkY(float y) {
+        return Mathf.clamp(Mathf.floor((y + tilesize / 2f) / (span * tilesize)), 0, chunksY - 1);
+    }
+
+    private static float originX(int cx) {
+        return cx * span * tilesize - tilesize / 2f;
+    }
+
+    private static float originY(int cy) {
+        return cy * span * tilesize - tilesize / 2f;
+    }
+
+    private static class Layer {
+        int chunk;
+        int size;
+        FrameBuffer buffer;
+        TextureRegion region;
+        boolean dirty = true;
+        boolean rendered;
+        long usedFrame;
+    }
+}
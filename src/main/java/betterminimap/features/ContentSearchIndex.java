@@ -0,0 +1,63 @@
+package betterminimap.features;
+
+import arc.struct.Seq;
+import mindustry.ctype.UnlockableContent;
+
+final class ContentSearchIndex {
+    private final UnlockableContent[] items;
+    private final String[] keys;
+
+    private final int[] matches;
+    private int matchCount;
+    private String lastQuery;
+
+    ContentSearchIndex(Seq<? extends UnlockableContent> content) {
+        items = new UnlockableContent[content.size];
+        keys = new String[content.size];
+        matches = new int[content.size];
+
+        for (int i = 0; i < content.size; i++) {
+            UnlockableContent c = content.get(i);
+            items[i] = c;
+            String localized = c.localizedName == null ? "" : c.localizedName.toLowerCase();
+            String internal = c.name == null ? "" : c.name.toLowerCase();
+            keys[i] = localized + '\n' + internal;
+        }
+    }
+
+    int size() {
+        return items.length;
+    }
+
+    UnlockableContent get(int index) {
+        return items[index];
+    }
+
+    void search(String query, Seq<UnlockableContent> out) {
+        String q = query == null ? "" : query.trim().toLowerCase();
+        out.clear();
+
+        if (q.isEmpty()) {
+            out.addAll(items);
+            lastQuery = null;
+            return;
+        }
+
+        // Typing narrows the previous result, so only rescan what already matched.
+        int count = 0;
+        if (lastQuery != null && q.startsWith(lastQuery)) {
+            for (int i = 0; i < matchCount; i++) {
+                int index = matches[i];
+                if (keys[index].contains(q)) matches[count++] = index;
+            }
+        } else {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].contains(q)) matches[count++] = i;
+            }
+        }
+        matchCount = count;
+        lastQuery = q;
+
+        for (int i = 0; i < count; i++) out.add(items[matches[i]]);
+    }
+}
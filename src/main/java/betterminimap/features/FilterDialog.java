@@ -0,0 +1,225 @@
+package betterminimap.features;
+
+import arc.Core;
+import arc.math.Mathf;
+import arc.scene.style.TextureRegionDrawable;
+import arc.scene.ui.Image;
+import arc.scene.ui.ScrollPane;
+import arc.scene.ui.TextButton;
+import arc.scene.ui.TextField;
+import arc.scene.ui.layout.Scl;
+import arc.scene.ui.layout.WidgetGroup;
+import arc.struct.ObjectSet;
+import arc.struct.Seq;
+import mindustry.ctype.UnlockableContent;
+import mindustry.gen.Icon;
+import mindustry.graphics.Pal;
+import mindustry.ui.Styles;
+import mindustry.ui.dialogs.BaseDialog;
+
+final class FilterDialog {
+    private static final float cellWidth = 178f;
+    private static final float cellHeight = 108f;
+    private static final float cellPad = 4f;
+    private static final float columnWidth = 180f;
+
+    private FilterDialog() {
+    }
+
+    static void show(String title, ContentSearchIndex index, FilterList list) {
+        BaseDialog dialog = new BaseDialog(title);
+        dialog.addCloseButton();
+
+        ObjectSet<String> enabledSet = list.names();
+        Seq<UnlockableContent> filtered = new Seq<>(index.size());
+
+        Runnable commit = () -> {
+            list.changed();
+            BetterMiniMapFeature.markFiltersDirty();
+        };
+
+        Grid grid = new Grid(filtered, enabledSet, commit);
+        ScrollPane pane = new ScrollPane(grid, Styles.noBarPane);
+        pane.setForceScroll(true, true);
+        grid.pane = pane;
+
+        dialog.cont.table(top -> {
+            top.left();
+            top.add(Core.bundle.get("mmplus.search")).padRight(6f);
+            TextField search = top.field("", t -> { }).growX().get();
+            search.setMessageText(Core.bundle.get("mmplus.search.hint"));
+
+            top.button(Icon.ok, Styles.cleari, () -> {
+                enabledSet.clear();
+                for (int i = 0; i < index.size(); i++) enabledSet.add(index.get(i).name);
+                commit.run();
+            }).size(44f).tooltip(Core.bundle.get("mmplus.allon"));
+
+            top.button(Icon.cancel, Styles.cleari, () -> {
+                enabledSet.clear();
+                commit.run();
+            }).size(44f).tooltip(Core.bundle.get("mmplus.alloff"));
+
+            top.button(Icon.refresh, Styles.cleari, () -> {
+                for (int i = 0; i < index.size(); i++) {
+                    String name = index.get(i).name;
+                    if (enabledSet.contains(name)) enabledSet.remove(name);
+                    else enabledSet.add(name);
+                }
+                commit.run();
+            }).size(44f).tooltip(Core.bundle.get("mmplus.invert"));
+
+            top.row();
+            top.image().color(Pal.gray).height(4f).growX().padTop(6f);
+
+            search.changed(() -> {
+                index.search(search.getText(), filtered);
+                pane.setScrollYForce(0f);
+                grid.itemsChanged();
+            });
+        }).growX().row();
+
+        dialog.cont.add(pane).grow().row();
+        dialog.hidden(list::flush);
+
+        index.search("", filtered);
+        grid.itemsChanged();
+
+        dialog.show();
+    }
+
+    private static final class Grid extends WidgetGroup {
+        private final Seq<UnlockableContent> items;
+        private final ObjectSet<String> enabledSet;
+        private final Runnable commit;
+        private final Seq<Slot> slots = new Seq<>();
+        ScrollPane pane;
+
+        private int boundFrom = -1;
+        private int boundTo = -1;
+        private int boundColumns;
+        private float boundWidth;
+
+        Grid(Seq<UnlockableContent> items, ObjectSet<String> enabledSet, Runnable commit) {
+            this.items = items;
+            this.enabledSet = enabledSet;
+            this.commit = commit;
+        }
+
+        void itemsChanged() {
+            boundFrom = -1;
+            invalidateHierarchy();
+        }
+
+        void toggle(UnlockableContent item) {
+            if (enabledSet.contains(item.name)) enabledSet.remove(item.name);
+            else enabledSet.add(item.name);
+            commit.run();
+        }
+
+        private int columns() {
+            return Math.max(1, Mathf.floor(Core.scene.getWidth() / Scl.scl(columnWidth)));
+        }
+
+        private int rows() {
+            int columns = columns();
+            return (items.size + columns - 1) / columns;
+        }
+
+        @Override
+        public float getPrefWidth() {
+            return columns() * Scl.scl(cellWidth);
+        }
+
+        @Override
+        public float getPrefHeight() {
+            return rows() * Scl.scl(cellHeight);
+        }
+
+        @Override
+        public void layout() {
+            boundFrom = -1;
+            bindVisible();
+        }
+
+        @Override
+        public void act(float delta) {
+            bindVisible();
+            super.act(delta);
+        }
+
+        // Only the rows inside the scroll viewport get widgets; the pool is rebound as it scrolls.
+        private void bindVisible() {
+            int columns = columns();
+            float cw = Scl.scl(cellWidth);
+            float ch = Scl.scl(cellHeight);
+            float scrollY = pane == null ? 0f : Math.max(0f, pane.getVisualScrollY());
+            float viewHeight = pane == null ? height : pane.getScrollHeight();
+
+            int firstRow = (int) (scrollY / ch);
+            int lastRow = Math.min(rows(), (int) Math.ceil((scrollY + viewHeight) / ch));
+            int from = Math.min(items.size, firstRow * columns);
+            int to = Math.min(items.size, Math.max(lastRow, firstRow) * columns);
+            if (from == boundFrom && to == boundTo && columns == boundColumns && width == boundWidth) return;
+            boundFrom = from;
+            boundTo = to;
+            boundColumns = columns;
+            boundWidth = width;
+
+            int needed = to - from;
+            while (slots.size < needed) {
+                Slot slot = new Slot(this);
+                slots.add(slot);
+                addChild(slot);
+            }
+
+            float left = Math.max(0f, (width - columns * cw) / 2f);
+            float pad = Scl.scl(cellPad);
+            for (int i = 0; i < slots.size; i++) {
+                Slot slot = slots.get(i);
+                if (i >= needed) {
+                    slot.bind(null);
+                    continue;
+                }
+
+                int index = from + i;
+                int row = index / columns;
+                int col = index % columns;
+                slot.bind(items.get(index));
+                slot.setBounds(left + col * cw + pad, height - (row + 1) * ch + pad, cw - pad * 2f, ch - pad * 2f);
+            }
+        }
+    }
+
+    private static final class Slot extends TextButton {
+        private final Grid grid;
+        private final TextureRegionDrawable icon = new TextureRegionDrawable();
+        private UnlockableContent item;
+
+        Slot(Grid grid) {
+            super("", Styles.flatToggleMenut);
+            this.grid = grid;
+            add(new Image(icon)).size(32f).pad(8f);
+            getCells().reverse();
+            clicked(() -> {
+                if (item != null) grid.toggle(item);
+            });
+        }
+
+        void bind(UnlockableContent next) {
+            visible = next != null;
+            if (next == item) return;
+            item = next;
+            if (next == null) return;
+
+            setText(next.localizedName);
+            icon.setRegion(next.uiIcon);
+        }
+
+        @Override
+        public void act(float delta) {
+            if (item != null) setChecked(grid.enabledSet.contains(item.name));
+            super.act(delta);
+        }
+    }
+}
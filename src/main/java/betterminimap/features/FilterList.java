@@ -0,0 +1,65 @@
+package betterminimap.features;
+
+import arc.Core;
+import arc.struct.ObjectSet;
+import arc.struct.Seq;
+import arc.util.Time;
+import mindustry.ctype.UnlockableContent;
+
+final class FilterList {
+    private static final float flushDelay = 1f;
+
+    private final String key;
+    private final ObjectSet<String> names = new ObjectSet<>();
+    private final Seq<String> scratch = new Seq<>();
+    private boolean loaded;
+    private boolean dirty;
+    private float changedAt;
+
+    FilterList(String key) {
+        this.key = key;
+    }
+
+    ObjectSet<String> names() {
+        if (!loaded) {
+            loaded = true;
+            names.clear();
+            Seq<String> stored = Core.settings.getJson(key, Seq.class, String.class, Seq::new);
+            stored.each(v -> names.add((String) v));
+        }
+        return names;
+    }
+
+    void reload() {
+        loaded = false;
+        dirty = false;
+    }
+
+    void changed() {
+        dirty = true;
+        changedAt = Time.time;
+    }
+
+    void flushIfIdle() {
+        if (dirty && Time.time - changedAt >= flushDelay * Time.toSeconds) flush();
+    }
+
+    void flush() {
+        if (!dirty) return;
+        dirty = false;
+
+        scratch.clear();
+        names.each(scratch::add);
+        scratch.sort();
+        Core.settings.putJson(key, String.class, scratch);
+    }
+
+    boolean[] enabledById(Seq<? extends UnlockableContent> all) {
+        ObjectSet<String> enabled = names();
+        boolean[] enabledById = new boolean[all.size];
+        for (UnlockableContent c : all) {
+            enabledById[c.id] = enabled.contains(c.name);
+        }
+        return enabledById;
+    }
+}
@@ -0,0 +1,112 @@
+package betterminimap.features;
+
+import arc.math.Mathf;
+import arc.util.Log;
+import arc.util.Time;
+import betterminimap.core.FogChanges;
+import betterminimap.core.VisibilityMask;
+import mindustry.game.Team;
+import mindustry.game.Teams.TeamData;
+import mindustry.gen.Building;
+import mindustry.gen.Unit;
+import mindustry.world.meta.BlockFlag;
+
+import java.util.Arrays;
+
+import static mindustry.Vars.fogControl;
+import static mindustry.Vars.indexer;
+import static mindustry.Vars.state;
+
+final class FogVisibility {
+    private static final float passTime = 0.1f;
+    // Passes a chunk is re-read after its last change, while the game's fog thread catches up.
+    private static final int settlePasses = 3;
+
+    private final VisibilityMask mask = new VisibilityMask();
+    private FogChanges[] changes = new FogChanges[0];
+    private float sincePass;
+    private boolean failed;
+
+    VisibilityMask mask() {
+        return mask;
+    }
+
+    boolean active() {
+        return mask.enabled();
+    }
+
+    void reset(int width, int height) {
+        mask.reset(width, height);
+        Arrays.fill(changes, null);
+        sincePass = passTime * 60f;
+    }
+
+    // Copies each team's fog into its bitmap in the mask, re-reading only the chunks where the
+    // team's vision circles changed (see FogChanges), and shows the player's team. A team seen for
+    // the first time reads the whole map once. If reading the game's fog fails the mask keeps
+    // hiding enemies instead of leaking them.
+    void update(int playerTeam) {
+        if (failed) return;
+        boolean wasEnabled = mask.enabled();
+        mask.setEnabled(playerTeam >= 0 && state.rules.fog);
+        if (!mask.enabled() || mask.height() == 0) return;
+        if (!wasEnabled) Arrays.fill(changes, null);
+        mask.show(playerTeam);
+
+        sincePass += Time.delta;
+        if (sincePass < passTime * 60f) return;
+        sincePass = 0f;
+
+        try {
+            boolean staticFog = state.rules.staticFog;
+            boolean playerPresent = false;
+            for (TeamData data : state.teams.present) {
+                pass(data.team, data, staticFog);
+                playerPresent |= data.team.id == playerTeam;
+            }
+            if (!playerPresent) pass(Team.get(playerTeam), null, staticFog);
+        } catch (Throwable t) {
+            failed = true;
+            Log.err("[betterminimap] Fog culling disabled", t);
+        }
+    }
+
+    private void pass(Team team, TeamData data, boolean staticFog) {
+        FogChanges c = changes(team.id);
+        c.begin();
+        if (data != null) {
+            for (Unit unit : data.units) {
+                c.source(unit.id, unit.tileX(), unit.tileY(), Mathf.ceil(unit.type.fogRadius) + 1);
+            }
+            // Building ids are negated tile positions, apart from the (non-negative) unit ids.
+            for (Building build : indexer.getFlagged(team, BlockFlag.hasFogRadius)) {
+                c.source(~build.pos(), build.tileX(), build.tileY(), Mathf.ceil(build.fogRadius()) + 1);
+            }
+        }
+        c.finish();
+
+        int width = mask.width(), height = mask.height();
+        int chunksX = c.chunksX();
+        for (int i = 0; i < c.dirtyCount(); i++) {
+            int chunk = c.dirtyChunk(i);
+            int minX = chunk % chunksX * FogChanges.chunkTiles, minY = chunk / chunksX * FogChanges.chunkTiles;
+            int maxX = Math.min(width, minX + FogChanges.chunkTiles), maxY = Math.min(height, minY + FogChanges.chunkTiles);
+            for (int y = minY; y < maxY; y++) {
+                for (int x = minX; x < maxX; x++) {
+                    boolean visible = fogControl.isVisibleTile(team, x, y);
+                    mask.setTile(team.id, x, y, visible, visible && (!staticFog || fogControl.isDiscovered(team, x, y)));
+                }
+            }
+        }
+    }
+
+    private FogChanges changes(int team) {
+        if (team >= changes.length) changes = Arrays.copyOf(changes, Math.max(team + 1, changes.length * 2));
+        FogChanges c = changes[team];
+        if (c == null) {
+            c = changes[team] = new FogChanges(settlePasses);
+            c.reset(mask.width(), mask.height());
+        }
+        return c;
+    }
+}
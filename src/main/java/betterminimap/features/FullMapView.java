@@ -0,0 +1,103 @@
+package betterminimap.features;
+
+import arc.Core;
+import arc.util.Log;
+import betterminimap.core.ViewRect;
+import mindustry.ui.fragments.MinimapFragment;
+
+import java.lang.reflect.Field;
+
+import static mindustry.Vars.tilesize;
+import static mindustry.Vars.ui;
+import static mindustry.Vars.world;
+
+final class FullMapView {
+    private static final float queryPadding = 0.5f;
+
+    final ViewRect view = new ViewRect();
+    final ViewRect query = new ViewRect();
+    float originX;
+    float originY;
+    float scale;
+    boolean queryMoved;
+
+    private Field panxField;
+    private Field panyField;
+    private Field zoomField;
+    private Field baseSizeField;
+    private boolean failed;
+
+    boolean usable() {
+        return !failed;
+    }
+
+    // Mirrors MinimapFragment's own layout: the map is drawn centered at
+    // (w/2 + panx*zoom, h/2 + pany*zoom) with baseSize * zoom pixels per tile.
+    boolean update() {
+        if (failed || ui == null || ui.minimapfrag == null || world == null || world.width() <= 0) return false;
+
+        float panx, pany, zoom, baseSize;
+        try {
+            if (panxField == null) {
+                panxField = field("panx");
+                panyField = field("pany");
+                zoomField = field("zoom");
+                baseSizeField = field("baseSize");
+            }
+            panx = panxField.getFloat(ui.minimapfrag);
+            pany = panyField.getFloat(ui.minimapfrag);
+            zoom = zoomField.getFloat(ui.minimapfrag);
+            baseSize = baseSizeField.getFloat(ui.minimapfrag);
+        } catch (Throwable t) {
+            failed = true;
+            Log.err("[betterminimap] Full-screen map overlay disabled", t);
+            return false;
+        }
+
+        float w = Core.graphics.getWidth();
+        float h = Core.graphics.getHeight();
+        float size = baseSize * zoom * world.width();
+        float ratio = world.height() / (float) world.width();
+        float left = w / 2f + panx * zoom - size / 2f;
+        float bottom = h / 2f + pany * zoom - size * ratio / 2f;
+        scale = size / (world.width() * tilesize);
+        if (scale <= 0f) return false;
+
+        float half = tilesize / 2f;
+        float mapMaxX = world.width() * tilesize - half;
+        float mapMaxY = world.height() * tilesize - half;
+        float x0 = Math.max(-half, -left / scale - half);
+        float y0 = Math.max(-half, -bottom / scale - half);
+        float x1 = Math.min(mapMaxX, (w - left) / scale - half);
+        float y1 = Math.min(mapMaxY, (h - bottom) / scale - half);
+        if (x1 <= x0 || y1 <= y0) return false;
+
+        view.set(x0, y0, x1 - x0, y1 - y0);
+        originX = left;
+        originY = bottom;
+
+        // The query rect only moves once the view leaves it (or is far larger than it after
+        // zooming in), so panning inside it reuses the current snapshot.
+        queryMoved = !query.contains(view) || query.width * query.height > view.width * view.height * 8f;
+        if (queryMoved) {
+            float padX = view.width * queryPadding;
+            float padY = view.height * queryPadding;
+            float qx0 = Math.max(-half, x0 - padX);
+            float qy0 = Math.max(-half, y0 - padY);
+            float qx1 = Math.min(mapMaxX, x1 + padX);
+            float qy1 = Math.min(mapMaxY, y1 + padY);
+            query.set(qx0, qy0, qx1 - qx0, qy1 - qy0);
+        }
+        return true;
+    }
+
+    void reset() {
+        query.set(0f, 0f, 0f, 0f);
+    }
+
+    private static Field field(String name) throws NoSuchFieldException {
+        Field field = MinimapFragment.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+}
@@ -0,0 +1,146 @@
+package betterminimap.features;
+
+import arc.Core;
+import arc.func.Cons;
+import arc.math.geom.Rect;
+import arc.struct.Seq;
+import betterminimap.core.BuildingSnapshot;
+import betterminimap.core.EntitySource;
+import betterminimap.core.OverlaySettings;
+import betterminimap.core.UnitSnapshot;
+import betterminimap.core.ViewRect;
+import betterminimap.core.Viewport;
+import betterminimap.core.VisibilityMask;
+import mindustry.game.Teams;
+import mindustry.gen.Building;
+import mindustry.gen.Groups;
+import mindustry.gen.Unit;
+
+import static mindustry.Vars.player;
+import static mindustry.Vars.renderer;
+import static mindustry.Vars.state;
+import static mindustry.Vars.tilesize;
+import static mindustry.Vars.world;
+
+final class GameOverlayInputs implements Viewport, EntitySource {
+    private static final float unitTreePadding = tilesize * 4f;
+
+    private final BuildingIndex buildingIndex;
+    private final VisibilityMask visibility;
+    private final Rect queryRect = new Rect();
+    private final Cons<Unit> unitCopier = this::copyUnit;
+    private final Cons<Building> buildingCopier = this::copyBuilding;
+
+    private UnitSnapshot unitTarget;
+    private BuildingSnapshot buildingTarget;
+
+    GameOverlayInputs(BuildingIndex buildingIndex, VisibilityMask visibility) {
+        this.buildingIndex = buildingIndex;
+        this.visibility = visibility;
+    }
+
+    @Override
+    public float cameraX() {
+        return Core.camera.position.x;
+    }
+
+    @Override
+    public float cameraY() {
+        return Core.camera.position.y;
+    }
+
+    @Override
+    public float zoom() {
+        return renderer.minimap.getZoom();
+    }
+
+    @Override
+    public int worldWidth() {
+        return world.width();
+    }
+
+    @Override
+    public int worldHeight() {
+        return world.height();
+    }
+
+    @Override
+    public int playerTeam() {
+        return player == null ? -1 : player.team().id;
+    }
+
+    @Override
+    public void collectUnits(ViewRect rect, OverlaySettings settings, UnitSnapshot out) {
+        if (!treesUsable()) {
+            collectAllUnits(out);
+            return;
+        }
+
+        for (int i = 0; i < teamCount(); i++) {
+            collectTeamUnits(i, rect, settings, out);
+        }
+    }
+
+    @Override
+    public void collectBuildings(ViewRect rect, OverlaySettings settings, BuildingSnapshot out) {
+        if (!buildingIndex.ready()) buildingIndex.rebuild();
+
+        buildingTarget = out;
+        buildingIndex.each(settings.blockFilter(), queryRect.set(rect.x, rect.y, rect.width, rect.height), buildingCopier);
+        buildingTarget = null;
+    }
+
+    @Override
+    public VisibilityMask visibility() {
+        return visibility;
+    }
+
+    boolean treesUsable() {
+        if (state == null || state.teams == null) return false;
+
+        Seq<Teams.TeamData> present = state.teams.present;
+        int indexed = 0;
+        for (int i = 0; i < present.size; i++) {
+            Teams.TeamData data = present.get(i);
+            if (data.units.isEmpty()) continue;
+            if (data.unitTree == null) return false;
+            indexed += data.units.size;
+        }
+        return indexed == Groups.unit.size();
+    }
+
+    int teamCount() {
+        return state.teams.present.size;
+    }
+
+    void collectAllUnits(UnitSnapshot out) {
+        unitTarget = out;
+        Groups.unit.each(unitCopier);
+        unitTarget = null;
+    }
+
+    void collectTeamUnits(int index, ViewRect rect, OverlaySettings settings, UnitSnapshot out) {
+        Teams.TeamData data = state.teams.present.get(index);
+        if (data.units.isEmpty() || data.unitTree == null) return;
+        if (!settings.showEnemyUnits() || !settings.showFriendlyUnits()) {
+            boolean enemy = data.team.id != playerTeam();
+            if (enemy && !settings.showEnemyUnits()) return;
+            if (!enemy && !settings.showFriendlyUnits()) return;
+        }
+
+        float pad = unitTreePadding;
+        unitTarget = out;
+        data.unitTree.intersect(rect.x - pad, rect.y - pad, rect.width + pad * 2f, rect.height + pad * 2f, unitCopier);
+        unitTarget = null;
+    }
+
+    private void copyUnit(Unit u) {
+        if (u == null || !u.isValid() || u.type == null) return;
+        unitTarget.add(u.x, u.y, u.rotation, u.team.id, u.type.id, u.id);
+    }
+
+    private void copyBuilding(Building b) {
+        if (b == null || !b.isValid() || b.block == null || b.tile == null) return;
+        buildingTarget.add(b.x, b.y, b.block.id, b.block.size, b.team.id, b.tile.pos());
+    }
+}
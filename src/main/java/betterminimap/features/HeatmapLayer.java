@@ -0,0 +1,123 @@
+package betterminimap.features;
+
+import arc.graphics.Pixmap;
+import arc.graphics.Texture;
+import arc.graphics.g2d.Draw;
+import arc.graphics.g2d.TextureRegion;
+import arc.util.Log;
+import arc.util.Time;
+import betterminimap.core.DensityGrid;
+import betterminimap.core.OverlayProfiler;
+import betterminimap.core.UnitSnapshot;
+import mindustry.game.Team;
+
+import static mindustry.Vars.tilesize;
+
+final class HeatmapLayer {
+    static final int cellTiles = 4;
+
+    private static final float updateTime = 0.25f;
+
+    private final DensityGrid grid = new DensityGrid();
+    private final UnitSnapshot units = new UnitSnapshot();
+    private final int[] teamRgba = new int[DensityGrid.maxTeams];
+    private final TextureRegion region = new TextureRegion();
+
+    private Pixmap pixmap;
+    private Texture texture;
+    private float lastUpdateAt = -1000f;
+    private int teamColorHash;
+    private int revision;
+    private boolean failed;
+
+    boolean usable() {
+        return !failed;
+    }
+
+    int revision() {
+        return revision;
+    }
+
+    void reset(int worldWidth, int worldHeight) {
+        dispose();
+        grid.reset(-tilesize / 2f, -tilesize / 2f, worldWidth * tilesize, worldHeight * tilesize, cellTiles * tilesize);
+        lastUpdateAt = -1000f;
+    }
+
+    void update(GameOverlayInputs inputs, SettingsSnapshot settings, int playerTeam) {
+        if (failed || Time.time - lastUpdateAt < updateTime * Time.toSeconds) return;
+        lastUpdateAt = Time.time;
+
+        long started = OverlayProfiler.start();
+        try {
+            units.clear();
+            inputs.collectAllUnits(units);
+            grid.update(units, settings.unitEnabledById, playerTeam, settings.showEnemyUnits, settings.showFriendlyUnits, inputs.visibility());
+            OverlayProfiler.count(OverlayProfiler.unitsScanned, units.size);
+            OverlayProfiler.count(OverlayProfiler.unitsAccepted, grid.units());
+
+            int hash = 0;
+            for (int i = 0; i < teamRgba.length; i++) {
+                teamRgba[i] = Team.get(i).color.rgba();
+                hash = hash * 31 + teamRgba[i];
+            }
+            if (hash != teamColorHash) {
+                teamColorHash = hash;
+                grid.markAllDirty();
+            }
+
+            upload();
+        } catch (Throwable t) {
+            failed = true;
+            Log.err("[betterminimap] Heatmap disabled", t);
+            dispose();
+        }
+        OverlayProfiler.stop(OverlayProfiler.phaseRefresh, started);
+    }
+
+    void draw(float alpha) {
+        if (failed || texture == null) return;
+
+        float w = grid.width() * grid.cellWorld();
+        float h = grid.height() * grid.cellWorld();
+        Draw.color(1f, 1f, 1f, alpha);
+        Draw.rect(region, grid.originX() + w / 2f, grid.originY() + h / 2f, w, h);
+        Draw.reset();
+        OverlayProfiler.count(OverlayProfiler.drawCalls, 1);
+    }
+
+    void dispose() {
+        if (texture != null) texture.dispose();
+        if (pixmap != null) pixmap.dispose();
+        texture = null;
+        pixmap = null;
+    }
+
+    // Only cells that changed since the last upload are rewritten; the texture is a few
+    // hundred texels square, so re-sending it whole is cheaper than sub-image bookkeeping.
+    private void upload() {
+        int width = grid.width(), height = grid.height();
+        if (pixmap == null) {
+            pixmap = new Pixmap(width, height);
+            grid.markAllDirty();
+        }
+
+        int changed = grid.dirtyCount();
+        if (changed == 0 && texture != null) return;
+
+        for (int i = 0; i < changed; i++) {
+            int cell = grid.dirtyCell(i);
+            pixmap.set(cell % width, height - 1 - cell / width, grid.color(cell, teamRgba));
+        }
+        grid.clearDirty();
+        revision++;
+
+        if (texture == null) {
+            texture = new Texture(pixmap);
+            texture.setFilter(Texture.TextureFilter.linear);
+            region.set(texture);
+        } else {
+            texture.draw(pixmap);
+        }
+    }
+}
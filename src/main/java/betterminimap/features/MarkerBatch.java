@@ -0,0 +1,194 @@
+package betterminimap.features;
+
+import arc.Core;
+import arc.graphics.Color;
+import arc.graphics.Texture;
+import arc.graphics.g2d.Draw;
+import arc.graphics.g2d.Fill;
+import arc.graphics.g2d.Lines;
+import arc.graphics.g2d.TextureRegion;
+import arc.struct.ObjectIntMap;
+import betterminimap.core.OverlayProfiler;
+
+import java.util.Arrays;
+
+final class MarkerBatch {
+    private static final byte shapeCircle = 0;
+    private static final byte shapeRect = 1;
+
+    private final Color color = new Color();
+    private final ObjectIntMap<Texture> pages = new ObjectIntMap<>();
+
+    private int backgroundCount;
+    private float[] backgroundX = new float[64];
+    private float[] backgroundY = new float[64];
+    private float[] backgroundWidth = new float[64];
+    private float[] backgroundHeight = new float[64];
+    private int[] backgroundColor = new int[64];
+    private byte[] backgroundShape = new byte[64];
+
+    private int iconCount;
+    private TextureRegion[] iconRegion = new TextureRegion[64];
+    private float[] iconX = new float[64];
+    private float[] iconY = new float[64];
+    private float[] iconSize = new float[64];
+    private float[] iconRotation = new float[64];
+    private float[] iconAlpha = new float[64];
+    private int[] iconPage = new int[64];
+    private int[] iconOrder = new int[64];
+    private int[] pageStart = new int[8];
+
+    private int outlineCount;
+    private float[] outlineX = new float[64];
+    private float[] outlineY = new float[64];
+    private float[] outlineRadius = new float[64];
+    private int[] outlineColor = new int[64];
+
+    private Texture lastTexture;
+    private int textureSwitches;
+
+    void circle(float x, float y, float radius, Color tint, float alpha) {
+        background(x, y, radius, radius, tint, alpha, shapeCircle);
+    }
+
+    void rect(float x, float y, float size, Color tint, float alpha) {
+        background(x, y, size, size, tint, alpha, shapeRect);
+    }
+
+    void rect(float x, float y, float width, float height, Color tint, float alpha) {
+        background(x, y, width, height, tint, alpha, shapeRect);
+    }
+
+    void icon(TextureRegion region, float x, float y, float size, float rotation, float alpha) {
+        if (iconCount == iconX.length) growIcons();
+        int i = iconCount++;
+        iconRegion[i] = region;
+        iconX[i] = x;
+        iconY[i] = y;
+        iconSize[i] = size;
+        iconRotation[i] = rotation;
+        iconAlpha[i] = alpha;
+
+        Texture texture = region.texture;
+        int page = pages.get(texture, -1);
+        if (page < 0) {
+            page = pages.size;
+            pages.put(texture, page);
+        }
+        iconPage[i] = page;
+    }
+
+    void outline(float x, float y, float radius, Color tint, float alpha) {
+        if (outlineCount == outlineX.length) growOutlines();
+        int i = outlineCount++;
+        outlineX[i] = x;
+        outlineY[i] = y;
+        outlineRadius[i] = radius;
+        outlineColor[i] = color.set(tint).a(alpha).rgba8888();
+    }
+
+    // Backgrounds, then icons grouped by atlas page, then outlines: the sprite batch only
+    // flushes when the texture changes, so interleaving them per marker splits every batch.
+    void draw(float outlineStroke) {
+        lastTexture = null;
+        textureSwitches = 0;
+
+        if (backgroundCount > 0) {
+            use(Core.atlas.white().texture);
+            for (int i = 0; i < backgroundCount; i++) {
+                Draw.color(color.set(backgroundColor[i]));
+                if (backgroundShape[i] == shapeCircle) Fill.circle(backgroundX[i], backgroundY[i], backgroundWidth[i]);
+                else Fill.rect(backgroundX[i], backgroundY[i], backgroundWidth[i], backgroundHeight[i]);
+            }
+        }
+
+        if (iconCount > 0) {
+            sortIcons();
+            for (int n = 0; n < iconCount; n++) {
+                int i = iconOrder[n];
+                TextureRegion region = iconRegion[i];
+                use(region.texture);
+                Draw.color(1f, 1f, 1f, iconAlpha[i]);
+                float size = iconSize[i];
+                Draw.rect(region, iconX[i], iconY[i], size, size, iconRotation[i]);
+            }
+        }
+
+        if (outlineCount > 0) {
+            use(Core.atlas.white().texture);
+            Lines.stroke(outlineStroke);
+            for (int i = 0; i < outlineCount; i++) {
+                Draw.color(color.set(outlineColor[i]));
+                Lines.circle(outlineX[i], outlineY[i], outlineRadius[i]);
+            }
+        }
+
+        OverlayProfiler.count(OverlayProfiler.drawCalls, backgroundCount + iconCount + outlineCount);
+        OverlayProfiler.count(OverlayProfiler.textureSwitches, textureSwitches);
+        Draw.reset();
+        clear();
+    }
+
+    void clear() {
+        backgroundCount = outlineCount = 0;
+        Arrays.fill(iconRegion, 0, iconCount, null);
+        iconCount = 0;
+    }
+
+    private void background(float x, float y, float width, float height, Color tint, float alpha, byte shape) {
+        if (backgroundCount == backgroundX.length) growBackgrounds();
+        int i = backgroundCount++;
+        backgroundX[i] = x;
+        backgroundY[i] = y;
+        backgroundWidth[i] = width;
+        backgroundHeight[i] = height;
+        backgroundColor[i] = color.set(tint).a(alpha).rgba8888();
+        backgroundShape[i] = shape;
+    }
+
+    private void use(Texture texture) {
+        if (texture == lastTexture) return;
+        lastTexture = texture;
+        textureSwitches++;
+    }
+
+    private void sortIcons() {
+        int pageCount = pages.size;
+        if (pageStart.length < pageCount + 1) pageStart = new int[pageCount + 1];
+        Arrays.fill(pageStart, 0, pageCount + 1, 0);
+
+        for (int i = 0; i < iconCount; i++) pageStart[iconPage[i] + 1]++;
+        for (int p = 0; p < pageCount; p++) pageStart[p + 1] += pageStart[p];
+        for (int i = 0; i < iconCount; i++) iconOrder[pageStart[iconPage[i]]++] = i;
+    }
+
+    private void growBackgrounds() {
+        int size = backgroundX.length * 2;
+        backgroundX = Arrays.copyOf(backgroundX, size);
+        backgroundY = Arrays.copyOf(backgroundY, size);
+        backgroundWidth = Arrays.copyOf(backgroundWidth, size);
+        backgroundHeight = Arrays.copyOf(backgroundHeight, size);
+        backgroundColor = Arrays.copyOf(backgroundColor, size);
+        backgroundShape = Arrays.copyOf(backgroundShape, size);
+    }
+
+    private void growIcons() {
+        int size = iconX.length * 2;
+        iconRegion = Arrays.copyOf(iconRegion, size);
+        iconX = Arrays.copyOf(iconX, size);
+        iconY = Arrays.copyOf(iconY, size);
+        iconSize = Arrays.copyOf(iconSize, size);
+        iconRotation = Arrays.copyOf(iconRotation, size);
+        iconAlpha = Arrays.copyOf(iconAlpha, size);
+        iconPage = Arrays.copyOf(iconPage, size);
+        iconOrder = Arrays.copyOf(iconOrder, size);
+    }
+
+    private void growOutlines() {
+        int size = outlineX.length * 2;
+        outlineX = Arrays.copyOf(outlineX, size);
+        outlineY = Arrays.copyOf(outlineY, size);
+        outlineRadius = Arrays.copyOf(outlineRadius, size);
+        outlineColor = Arrays.copyOf(outlineColor, size);
+    }
+}
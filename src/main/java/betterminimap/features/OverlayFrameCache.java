@@ -0,0 +1,107 @@
+package betterminimap.features;
+
+import arc.graphics.Blending;
+import arc.graphics.Color;
+import arc.graphics.Gl;
+import arc.graphics.Texture;
+import arc.graphics.g2d.Draw;
+import arc.graphics.g2d.TextureRegion;
+import arc.graphics.gl.FrameBuffer;
+import arc.math.Mat;
+import arc.math.Mathf;
+import arc.util.Log;
+import betterminimap.core.OverlayProfiler;
+
+import java.util.Arrays;
+
+final class OverlayFrameCache {
+    private static final Blending premultiplied = new Blending(Gl.one, Gl.oneMinusSrcAlpha);
+
+    private final Mat proj = new Mat();
+    private final Mat savedProj = new Mat();
+
+    private FrameBuffer buffer;
+    private TextureRegion region;
+    private int[] key = new int[0];
+    private boolean valid;
+    private boolean failed;
+
+    boolean usable() {
+        return !failed;
+    }
+
+    void invalidate() {
+        valid = false;
+    }
+
+    // Blits the last frame when every field of `key` matches the one it was painted with, otherwise
+    // repaints the element's rect into the buffer first. The blit lands `offsetX`/`offsetY` pixels
+    // off the rect, so a caller that painted at a pixel-snapped position can put the frame back at
+    // its true sub-pixel one. Returns false once the cache has failed so the caller draws directly.
+    boolean draw(int[] key, float x, float y, float width, float height, float offsetX, float offsetY, Runnable painter) {
+        if (failed) return false;
+
+        int w = Math.max(1, Mathf.ceil(width)), h = Math.max(1, Mathf.ceil(height));
+        boolean hit = valid && Arrays.equals(key, this.key) && buffer != null && buffer.getWidth() == w && buffer.getHeight() == h;
+        if (hit) {
+            OverlayProfiler.count(OverlayProfiler.overlayCacheHits, 1);
+        } else if (!render(key, x, y, width, height, w, h, painter)) {
+            return false;
+        }
+
+        Draw.blend(premultiplied);
+        Draw.color();
+        Draw.rect(region, x + offsetX + width / 2f, y + offsetY + height / 2f, width, -height);
+        Draw.blend();
+        OverlayProfiler.count(OverlayProfiler.drawCalls, 1);
+        return true;
+    }
+
+    void dispose() {
+        if (buffer != null) buffer.dispose();
+        buffer = null;
+        region = null;
+        valid = false;
+    }
+
+    private boolean render(int[] key, float x, float y, float width, float height, int w, int h, Runnable painter) {
+        boolean began = false;
+        Draw.flush();
+        savedProj.set(Draw.proj());
+        try {
+            if (buffer == null) {
+                buffer = new FrameBuffer(w, h);
+                region = new TextureRegion();
+            } else if (buffer.getWidth() != w || buffer.getHeight() != h) {
+                buffer.resize(w, h);
+            }
+            if (region.texture != buffer.getTexture()) {
+                // Linear, so a blit at a sub-pixel offset blends between texels instead of snapping
+                // back to whole pixels; at a zero offset it samples texel centres exactly.
+                buffer.getTexture().setFilter(Texture.TextureFilter.linear);
+                region.set(buffer.getTexture());
+            }
+
+            buffer.begin(Color.clear);
+            began = true;
+            Draw.proj(proj.setOrtho(x, y, width, height));
+            painter.run();
+            Draw.flush();
+            buffer.end();
+            began = false;
+
+            if (this.key.length != key.length) this.key = new int[key.length];
+            System.arraycopy(key, 0, this.key, 0, key.length);
+            valid = true;
+            return true;
+        } catch (Throwable t) {
+            failed = true;
+            Log.err("[betterminimap] Overlay frame cache disabled", t);
+            if (began) buffer.end();
+            dispose();
+            return false;
+        } finally {
+            Draw.proj(savedProj);
+        }
+    }
+}
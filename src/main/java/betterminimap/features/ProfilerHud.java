@@ -0,0 +1,108 @@
+package betterminimap.features;
+
+import arc.Core;
+import arc.files.Fi;
+import arc.scene.Element;
+import arc.scene.event.Touchable;
+import arc.scene.ui.Label;
+import arc.scene.ui.layout.Table;
+import arc.util.Align;
+import arc.util.Log;
+import arc.util.Strings;
+import arc.util.Time;
+import betterminimap.core.OverlayProfiler;
+import mindustry.ui.Styles;
+
+import static mindustry.Vars.ui;
+
+final class ProfilerHud {
+    private static final String panelName = "betterminimap-profiler";
+    private static final float panelRefreshTime = 0.5f;
+    private static final float dumpTime = 10f;
+
+    private static final StringBuilder text = new StringBuilder();
+    private static Table root;
+    private static Label label;
+    private static float lastPanelAt;
+    private static float lastDumpAt;
+    private static boolean dumpFailed;
+
+    private ProfilerHud() {
+    }
+
+    static void update(boolean showPanel, boolean dump) {
+        OverlayProfiler.setEnabled(showPanel || dump);
+
+        updatePanel(showPanel);
+        if (dump && !dumpFailed && Time.time - lastDumpAt >= dumpTime * Time.toSeconds) {
+            lastDumpAt = Time.time;
+            writeDump();
+        }
+    }
+
+    private static void updatePanel(boolean show) {
+        if (ui == null || ui.hudGroup == null) return;
+
+        if (!show) {
+            if (root != null) root.remove();
+            root = null;
+            label = null;
+            return;
+        }
+
+        if (root == null || root.parent == null) {
+            Element old = ui.hudGroup.find(panelName);
+            if (old != null) old.remove();
+
+            Table panel = new Table(Styles.black6);
+            panel.margin(6f);
+            label = panel.add("").style(Styles.outlineLabel).left().get();
+            label.setFontScale(0.75f);
+            label.setAlignment(Align.left);
+
+            root = new Table();
+            root.name = panelName;
+            root.setFillParent(true);
+            root.touchable = Touchable.disabled;
+            root.top().left().marginTop(160f).marginLeft(4f);
+            root.add(panel);
+            ui.hudGroup.addChild(root);
+            lastPanelAt = -panelRefreshTime * Time.toSeconds;
+        }
+
+        if (Time.time - lastPanelAt < panelRefreshTime * Time.toSeconds) return;
+        lastPanelAt = Time.time;
+
+        text.setLength(0);
+        text.append("[accent]betterMiniMap[] ").append(OverlayProfiler.frames()).append(" frames\n");
+        for (int p = 0; p < OverlayProfiler.phaseCount; p++) {
+            text.append(OverlayProfiler.phaseName(p))
+                .append("  avg ").append(Strings.fixed((float) OverlayProfiler.averageMs(p), 3))
+                .append("ms  p95 ").append(Strings.fixed((float) OverlayProfiler.percentileMs(p, 0.95f), 3))
+                .append("ms\n");
+        }
+        for (int c = 0; c < OverlayProfiler.counterCount; c++) {
+            if (c > 0) text.append(c % 2 == 0 ? '\n' : ' ');
+            text.append(OverlayProfiler.counterName(c)).append(' ').append(Strings.fixed((float) OverlayProfiler.averageCounter(c), 1));
+        }
+        label.setText(text);
+    }
+
+    private static void writeDump() {
+        try {
+            Fi dir = Core.settings.getDataDirectory().child("betterminimap");
+            dir.mkdirs();
+
+            StringBuilder out = new StringBuilder(64 * OverlayProfiler.historySize);
+            OverlayProfiler.writeCsv(out);
+            dir.child("profile.csv").writeString(out.toString());
+
+            out.setLength(0);
+            OverlayProfiler.writeJson(out);
+            dir.child("profile.json").writeString(out.toString());
+        } catch (Throwable t) {
+            dumpFailed = true;
+            Log.err("[betterminimap] Profiler dump disabled", t);
+        }
+    }
+}
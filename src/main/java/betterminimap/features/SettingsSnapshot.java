@@ -0,0 +1,203 @@
+package betterminimap.features;
+
+import arc.Core;
+import arc.math.Mathf;
+import betterminimap.core.OverlaySettings;
+import mindustry.world.Block;
+
+import java.util.Arrays;
+
+import static mindustry.Vars.content;
+
+final class SettingsSnapshot implements OverlaySettings {
+    static final SettingsSnapshot initial = new SettingsSnapshot();
+
+    final int version;
+
+    final boolean enabled;
+    final boolean unitsEnabled;
+    final boolean buildingsEnabled;
+    final boolean fullMapEnabled;
+    final boolean showFriendlyUnits;
+    final boolean showEnemyUnits;
+    final boolean showFriendlyBuildings;
+    final boolean showEnemyBuildings;
+    final boolean tintBuildingIcons;
+    final float unitSizePx;
+    final float unitAlpha;
+    final float unitClusterPx;
+    final float buildingScale;
+    final float iconAlpha;
+    final float iconBgAlpha;
+    final int refreshBudgetUs;
+    final int markerBudget;
+    final int heatmapThreshold;
+    final boolean asyncClustering;
+    final boolean profilerPanel;
+    final boolean profilerDump;
+    final boolean recordSnapshots;
+
+    final boolean[] unitEnabledById;
+    final boolean[] blockEnabledById;
+    final int maxEnabledBlockSize;
+
+    private SettingsSnapshot() {
+        version = 0;
+        enabled = false;
+        unitsEnabled = buildingsEnabled = fullMapEnabled = true;
+        showFriendlyUnits = showEnemyUnits = showFriendlyBuildings = showEnemyBuildings = true;
+        tintBuildingIcons = true;
+        unitSizePx = 6f;
+        unitAlpha = 0.9f;
+        unitClusterPx = 12f;
+        buildingScale = 1.2f;
+        iconAlpha = 0.9f;
+        iconBgAlpha = 0.35f;
+        refreshBudgetUs = 1000;
+        markerBudget = 5000;
+        heatmapThreshold = 20000;
+        asyncClustering = profilerPanel = profilerDump = recordSnapshots = false;
+        unitEnabledById = new boolean[0];
+        blockEnabledById = new boolean[0];
+        maxEnabledBlockSize = 1;
+    }
+
+    SettingsSnapshot(int version, boolean[] unitEnabledById, boolean[] blockEnabledById) {
+        this.version = version;
+
+        enabled = Core.settings.getBool(BetterMiniMapFeature.keyEnabled);
+        unitsEnabled = Core.settings.getBool(BetterMiniMapFeature.keyUnitsEnabled, true);
+        buildingsEnabled = Core.settings.getBool(BetterMiniMapFeature.keyBuildingsEnabled, true);
+        fullMapEnabled = Core.settings.getBool(BetterMiniMapFeature.keyFullMapEnabled, true);
+
+        showFriendlyUnits = Core.settings.getBool(BetterMiniMapFeature.keyShowFriendlyUnits, true);
+        showEnemyUnits = Core.settings.getBool(BetterMiniMapFeature.keyShowEnemyUnits, true);
+        showFriendlyBuildings = Core.settings.getBool(BetterMiniMapFeature.keyShowFriendlyBuildings, true);
+        showEnemyBuildings = Core.settings.getBool(BetterMiniMapFeature.keyShowEnemyBuildings, true);
+        tintBuildingIcons = Core.settings.getBool(BetterMiniMapFeature.keyTintBuildingIcons, true);
+
+        if (Core.settings.has(BetterMiniMapFeature.keyUnitScale)) {
+            float unitScale = Mathf.clamp(Core.settings.getInt(BetterMiniMapFeature.keyUnitScale, 100) / 100f, 0.1f, 10f);
+            unitSizePx = 6f * unitScale;
+        } else {
+            unitSizePx = Math.max(1f, Core.settings.getInt(BetterMiniMapFeature.keyUnitSizeLegacy, 6));
+        }
+        unitAlpha = Mathf.clamp(Core.settings.getInt(BetterMiniMapFeature.keyUnitAlpha, 90) / 100f);
+        unitClusterPx = Mathf.clamp(Core.settings.getInt(BetterMiniMapFeature.keyUnitClusterPx, 12), 2f, 80f);
+        buildingScale = Mathf.clamp(Core.settings.getInt(BetterMiniMapFeature.keyBuildingScale, 120) / 100f, 0.1f, 10f);
+        iconAlpha = Mathf.clamp(Core.settings.getInt(BetterMiniMapFeature.keyIconAlpha, 90) / 100f);
+        iconBgAlpha = Mathf.clamp(Core.settings.getInt(BetterMiniMapFeature.keyIconBgAlpha, 35) / 100f);
+        refreshBudgetUs = Mathf.clamp(Core.settings.getInt(BetterMiniMapFeature.keyRefreshBudgetUs, 1000), 100, 5000);
+        markerBudget = Mathf.clamp(Core.settings.getInt(BetterMiniMapFeature.keyMarkerBudget, 5000), 500, 20000);
+        heatmapThreshold = Mathf.clamp(Core.settings.getInt(BetterMiniMapFeature.keyHeatmapThreshold, 20000), 0, 100000);
+        asyncClustering = Core.settings.getBool(BetterMiniMapFeature.keyAsyncClustering, false);
+        profilerPanel = Core.settings.getBool(BetterMiniMapFeature.keyProfilerPanel, false);
+        profilerDump = Core.settings.getBool(BetterMiniMapFeature.keyProfilerDump, false);
+        recordSnapshots = Core.settings.getBool(BetterMiniMapFeature.keyRecordSnapshots, false);
+
+        this.unitEnabledById = unitEnabledById;
+        this.blockEnabledById = blockEnabledById;
+
+        int maxSize = 1;
+        for (int i = 0; i < blockEnabledById.length; i++) {
+            if (!blockEnabledById[i]) continue;
+            Block block = content.block(i);
+            if (block != null) maxSize = Math.max(maxSize, block.size);
+        }
+        maxEnabledBlockSize = maxSize;
+    }
+
+    // Every field except the version; a settings dialog closed without changes rebuilds an equal
+    // snapshot, and keeping the old one spares the caches keyed on the version.
+    boolean sameAs(SettingsSnapshot other) {
+        return enabled == other.enabled
+            && unitsEnabled == other.unitsEnabled
+            && buildingsEnabled == other.buildingsEnabled
+            && fullMapEnabled == other.fullMapEnabled
+            && showFriendlyUnits == other.showFriendlyUnits
+            && showEnemyUnits == other.showEnemyUnits
+            && showFriendlyBuildings == other.showFriendlyBuildings
+            && showEnemyBuildings == other.showEnemyBuildings
+            && tintBuildingIcons == other.tintBuildingIcons
+            && unitSizePx == other.unitSizePx
+            && unitAlpha == other.unitAlpha
+            && unitClusterPx == other.unitClusterPx
+            && buildingScale == other.buildingScale
+            && iconAlpha == other.iconAlpha
+            && iconBgAlpha == other.iconBgAlpha
+            && refreshBudgetUs == other.refreshBudgetUs
+            && markerBudget == other.markerBudget
+            && heatmapThreshold == other.heatmapThreshold
+            && asyncClustering == other.asyncClustering
+            && profilerPanel == other.profilerPanel
+            && profilerDump == other.profilerDump
+            && recordSnapshots == other.recordSnapshots
+            && Arrays.equals(unitEnabledById, other.unitEnabledById)
+            && Arrays.equals(blockEnabledById, other.blockEnabledById);
+    }
+
+    @Override
+    public int version() {
+        return version;
+    }
+
+    @Override
+    public boolean enabled() {
+        return enabled;
+    }
+
+    @Override
+    public boolean unitsEnabled() {
+        return unitsEnabled;
+    }
+
+    @Override
+    public boolean buildingsEnabled() {
+        return buildingsEnabled;
+    }
+
+    @Override
+    public boolean showFriendlyUnits() {
+        return showFriendlyUnits;
+    }
+
+    @Override
+    public boolean showEnemyUnits() {
+        return showEnemyUnits;
+    }
+
+    @Override
+    public boolean showFriendlyBuildings() {
+        return showFriendlyBuildings;
+    }
+
+    @Override
+    public boolean showEnemyBuildings() {
+        return showEnemyBuildings;
+    }
+
+    @Override
+    public float unitSizePx() {
+        return unitSizePx;
+    }
+
+    @Override
+    public float unitClusterPx() {
+        return unitClusterPx;
+    }
+
+    @Override
+    public float buildingScale() {
+        return buildingScale;
+    }
+
+    @Override
+    public boolean[] unitFilter() {
+        return unitEnabledById;
+    }
+
+    @Override
+    public boolean[] blockFilter() {
+        return blockEnabledById;
+    }
+}
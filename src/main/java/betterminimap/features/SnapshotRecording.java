@@ -0,0 +1,77 @@
+package betterminimap.features;
+
+import arc.Core;
+import arc.files.Fi;
+import arc.util.Log;
+import arc.util.Time;
+import betterminimap.core.BuildingSnapshot;
+import betterminimap.core.OverlayEngine;
+import betterminimap.core.SnapshotRecorder;
+import betterminimap.core.UnitSnapshot;
+import betterminimap.core.ViewRect;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import static mindustry.Vars.player;
+import static mindustry.Vars.state;
+
+final class SnapshotRecording {
+    private static final UnitSnapshot units = new UnitSnapshot();
+    private static final BuildingSnapshot buildings = new BuildingSnapshot();
+    private static final ViewRect view = new ViewRect();
+
+    private static SnapshotRecorder recorder;
+    private static float lastRecordAt = -1000f;
+    private static boolean failed;
+
+    private SnapshotRecording() {
+    }
+
+    // Records every unit in the world and the buildings inside the rect the overlay last queried,
+    // so a replay can run both the visibility filter and clustering on what the player saw.
+    static void update(boolean enabled, float interval, GameOverlayInputs inputs, SettingsSnapshot settings, ViewRect lastQuery) {
+        if (!enabled || failed || !state.isGame() || player == null) {
+            if (!enabled) stop();
+            return;
+        }
+        if (Time.time - lastRecordAt < interval * Time.toSeconds) return;
+        lastRecordAt = Time.time;
+
+        try {
+            if (recorder == null) recorder = new SnapshotRecorder(nextFile().file());
+
+            if (lastQuery.width > 0f && lastQuery.height > 0f) view.set(lastQuery);
+            else OverlayEngine.computeViewRect(inputs, view);
+
+            units.clear();
+            inputs.collectAllUnits(units);
+            buildings.clear();
+            inputs.collectBuildings(view, settings, buildings);
+            recorder.write(view, inputs, inputs.playerTeam(), units, buildings);
+        } catch (Throwable t) {
+            failed = true;
+            Log.err("[betterminimap] Snapshot recording disabled", t);
+            stop();
+        }
+    }
+
+    static void stop() {
+        if (recorder == null) return;
+        try {
+            recorder.close();
+            Log.info("[betterminimap] Recorded @ snapshot frames (@ KB)", recorder.frames(), recorder.bytesWritten() / 1024);
+        } catch (Throwable t) {
+            Log.err("[betterminimap] Closing snapshot recording failed", t);
+        }
+        recorder = null;
+        units.clear();
+        buildings.clear();
+    }
+
+    private static Fi nextFile() {
+        Fi dir = Core.settings.getDataDirectory().child("betterminimap").child("recordings");
+        dir.mkdirs();
+        return dir.child(new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".bmmr");
+    }
+}
@@ -0,0 +1,205 @@
+package betterminimap.update;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public final class UpdateFeed {
+    private static final int maxBodyBytes = 1 << 20;
+
+    public interface Listener {
+        void fetched(Source source, boolean first);
+    }
+
+    public static final class Source {
+        public final String name;
+        public final String url;
+        public final String[] versionFields;
+        public final String releaseUrlField;
+
+        public volatile String etag = "";
+        public volatile String lastModified = "";
+        public volatile String version = "";
+        public volatile String releaseUrl = "";
+        public volatile boolean notModified;
+        public volatile boolean valid;
+
+        public Source(String name, String url, String releaseUrlField, String... versionFields) {
+            this.name = name;
+            this.url = url;
+            this.releaseUrlField = releaseUrlField;
+            this.versionFields = versionFields;
+        }
+    }
+
+    private UpdateFeed() {
+    }
+
+    // Requests every source at once and blocks until all have answered. The listener runs on the
+    // request threads; `first` is true for exactly one call, the earliest source with a version.
+    public static void fetchAll(Source[] sources, int timeoutMs, Listener listener) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(sources.length);
+        AtomicBoolean answered = new AtomicBoolean();
+        for (Source source : sources) {
+            Thread thread = new Thread(() -> {
+                try {
+                    fetch(source, timeoutMs);
+                    listener.fetched(source, source.valid && answered.compareAndSet(false, true));
+                } finally {
+                    done.countDown();
+                }
+            }, "betterminimap-update-" + source.name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+    }
+
+    // Conditional GET: a cached version is revalidated with its ETag / Last-Modified, so an
+    // unchanged release costs a 304 and no body.
+    public static void fetch(Source source, int timeoutMs) {
+        source.notModified = false;
+        source.valid = false;
+
+        HttpURLConnection conn = null;
+        try {
+            conn = (HttpURLConnection) new URL(source.url).openConnection();
+            conn.setConnectTimeout(timeoutMs);
+            conn.setReadTimeout(timeoutMs);
+            conn.setUseCaches(false);
+            conn.setRequestProperty("User-Agent", "Mindustry");
+            if (!source.version.isEmpty()) {
+                if (!source.etag.isEmpty()) conn.setRequestProperty("If-None-Match", source.etag);
+                if (!source.lastModified.isEmpty()) conn.setRequestProperty("If-Modified-Since", source.lastModified);
+            }
+
+            int status = conn.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                source.notModified = true;
+                source.valid = !source.version.isEmpty();
+                return;
+            }
+            if (status != HttpURLConnection.HTTP_OK) return;
+
+            String body = readBody(conn.getInputStream());
+            String version = "";
+            for (int i = 0; i < source.versionFields.length && version.isEmpty(); i++) {
+                version = normalizeVersion(topLevelString(body, source.versionFields[i]));
+            }
+            if (version.isEmpty()) return;
+
+            source.version = version;
+            source.releaseUrl = source.releaseUrlField == null ? "" : topLevelString(body, source.releaseUrlField);
+            source.etag = header(conn, "ETag");
+            source.lastModified = header(conn, "Last-Modified");
+            source.valid = true;
+        } catch (IOException | RuntimeException ignored) {
+        } finally {
+            if (conn != null) conn.disconnect();
+        }
+    }
+
+    public static String normalizeVersion(String raw) {
+        if (raw == null) return "";
+        String out = raw.trim();
+        if (out.startsWith("v") || out.startsWith("V")) out = out.substring(1).trim();
+        return out;
+    }
+
+    // Value of a string field on the outermost object, without building a tree for the rest of
+    // the document (a release response also carries the notes and every asset).
+    public static String topLevelString(String json, String field) {
+        int depth = 0;
+        int n = json.length();
+        for (int i = 0; i < n; i++) {
+            char c = json.charAt(i);
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            } else if (c == '"') {
+                int end = stringEnd(json, i);
+                if (end < 0) return "";
+                if (depth == 1 && json.regionMatches(i + 1, field, 0, field.length()) && end == i + 1 + field.length()) {
+                    int colon = skipSpace(json, end + 1);
+                    if (colon < n && json.charAt(colon) == ':') {
+                        int value = skipSpace(json, colon + 1);
+                        if (value < n && json.charAt(value) == '"') {
+                            int valueEnd = stringEnd(json, value);
+                            return valueEnd < 0 ? "" : unescape(json, value + 1, valueEnd);
+                        }
+                        return "";
+                    }
+                }
+                i = end;
+            }
+        }
+        return "";
+    }
+
+    private static String header(HttpURLConnection conn, String name) {
+        String value = conn.getHeaderField(name);
+        return value == null ? "" : value;
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                if (out.size() > maxBodyBytes) throw new IOException("Update response too large");
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static int stringEnd(String json, int quote) {
+        for (int i = quote + 1; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == '\\') i++;
+            else if (c == '"') return i;
+        }
+        return -1;
+    }
+
+    private static int skipSpace(String json, int i) {
+        while (i < json.length() && Character.isWhitespace(json.charAt(i))) i++;
+        return i;
+    }
+
+    private static String unescape(String json, int from, int to) {
+        StringBuilder out = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            char c = json.charAt(i);
+            if (c != '\\' || i + 1 >= to) {
+                out.append(c);
+                continue;
+            }
+            char e = json.charAt(++i);
+            switch (e) {
+                case 'n': out.append('\n'); break;
+                case 't': out.append('\t'); break;
+                case 'r': out.append('\r'); break;
+                case 'b': out.append('\b'); break;
+                case 'f': out.append('\f'); break;
+                case 'u':
+                    if (i + 4 < to) {
+                        out.append((char) Integer.parseInt(json.substring(i + 1, i + 5), 16));
+                        i += 4;
+                    }
+                    break;
+                default: out.append(e); break;
+            }
+        }
+        return out.toString();
+    }
+}
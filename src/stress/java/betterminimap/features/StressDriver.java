@@ -0,0 +1,355 @@
+package betterminimap.features;
+
+import arc.ApplicationCore;
+import arc.Core;
+import arc.Events;
+import arc.backend.headless.HeadlessApplication;
+import arc.math.Angles;
+import arc.struct.Seq;
+import arc.util.Time;
+import betterminimap.core.ClusterBuffer;
+import betterminimap.core.MarkerBudget;
+import betterminimap.core.OverlayEngine;
+import betterminimap.core.ViewRect;
+import betterminimap.core.Viewport;
+import mindustry.Vars;
+import mindustry.content.Blocks;
+import mindustry.core.FileTree;
+import mindustry.core.GameState;
+import mindustry.core.Logic;
+import mindustry.core.World;
+import mindustry.game.EventType;
+import mindustry.game.Rules;
+import mindustry.game.Team;
+import mindustry.gen.Player;
+import mindustry.gen.Unit;
+import mindustry.net.Net;
+import mindustry.type.UnitType;
+import mindustry.world.Block;
+import mindustry.world.Tile;
+import mindustry.world.Tiles;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import static mindustry.Vars.content;
+import static mindustry.Vars.fogControl;
+import static mindustry.Vars.state;
+import static mindustry.Vars.tilesize;
+import static mindustry.Vars.world;
+
+public final class StressDriver implements Viewport {
+    private static final int unitCount = Integer.getInteger("betterminimap.stress.units", 10000);
+    private static final int typeCount = Integer.getInteger("betterminimap.stress.types", 12);
+    private static final int teamCount = Integer.getInteger("betterminimap.stress.teams", 4);
+    private static final int ticks = Integer.getInteger("betterminimap.stress.ticks", 600);
+    private static final int warmupTicks = Integer.getInteger("betterminimap.stress.warmup", 300);
+    private static final int baseBlocks = Integer.getInteger("betterminimap.stress.blocks", 20000);
+    private static final int worldSize = Integer.getInteger("betterminimap.stress.worldSize", 600);
+    private static final float zoom = Float.parseFloat(System.getProperty("betterminimap.stress.zoom", "8"));
+    private static final boolean fog = Boolean.parseBoolean(System.getProperty("betterminimap.stress.fog", "true"));
+    private static final boolean staticFog = Boolean.parseBoolean(System.getProperty("betterminimap.stress.staticFog", "true"));
+    private static final boolean async = Boolean.getBoolean("betterminimap.stress.async");
+
+    private static final int waypointsPerArmy = 6;
+    private static final int armySize = 200;
+    private static final float unitSpeed = 1.5f;
+    private static final float minimapPx = 200f;
+
+    private final Random rand = new Random(7L);
+    private final MarkerBudget markerBudget = new MarkerBudget();
+    private final ViewRect view = new ViewRect();
+
+    private Unit[] units;
+    private int[] unitArmy;
+    private float[] armyOffsetX;
+    private float[] armyOffsetY;
+    private float[][] waypoints;
+    private int[] armyTarget;
+    private float cameraX;
+    private float cameraY;
+
+    public static void main(String[] args) throws Throwable {
+        boot();
+        try {
+            new StressDriver().run();
+        } finally {
+            Core.app.exit();
+        }
+        System.exit(0);
+    }
+
+    // Same bootstrap Mindustry's own headless tests use. The application thread is interrupted
+    // once content is loaded so that every world update happens on this thread, in order.
+    private static void boot() throws Throwable {
+        boolean[] ready = {false};
+        Throwable[] error = {null};
+        ApplicationCore core = new ApplicationCore() {
+            @Override
+            public void setup() {
+                Vars.headless = true;
+                Vars.net = new Net(null);
+                Vars.tree = new FileTree();
+                Vars.init();
+                world = new World();
+                content.createBaseContent();
+                add(Vars.logic = new Logic());
+                content.init();
+            }
+
+            @Override
+            public void init() {
+                super.init();
+                ready[0] = true;
+                Thread.currentThread().interrupt();
+            }
+        };
+        new HeadlessApplication(core, t -> {
+            if (!ready[0]) error[0] = t;
+        });
+
+        while (!ready[0]) {
+            if (error[0] != null) throw error[0];
+            Thread.sleep(10);
+        }
+    }
+
+    // The overlay runs through the feature itself: its update trigger copies the player's fog
+    // into the visibility mask, and refreshOverlay steps and publishes the same time-sliced (or
+    // async) refresh the HUD overlay does, so only the drawing is left out.
+    private void run() {
+        Core.settings.put(BetterMiniMapFeature.keyEnabled, true);
+        Core.settings.put(BetterMiniMapFeature.keyAsyncClustering, async);
+        // A fresh install shows every unit but no buildings; the bases are half of the load.
+        Core.settings.putJson(BetterMiniMapFeature.keyBlockList, String.class, content.blocks().select(Block::hasBuilding).map(b -> b.name));
+        BetterMiniMapFeature.init();
+        Events.fire(new EventType.ClientLoadEvent());
+
+        createWorld();
+        spawnBases();
+        spawnArmies();
+        state.teams.updateTeamStats();
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) threads : null;
+        long thread = Thread.currentThread().getId();
+
+        long[] worldSamples = new long[ticks];
+        long[] overlaySamples = new long[ticks];
+        long allocated = 0L;
+        int clusters = 0, markers = 0, rects = 0;
+
+        for (int tick = 0; tick < warmupTicks + ticks; tick++) {
+            long started = System.nanoTime();
+            moveArmies();
+            state.teams.updateTeamStats();
+            if (fog) fogControl.update();
+            long worldNs = System.nanoTime() - started;
+
+            panCamera(tick);
+            Time.delta = 1f;
+            Time.time += Time.delta;
+            long allocatedBefore = allocations == null ? 0L : allocations.getThreadAllocatedBytes(thread);
+            started = System.nanoTime();
+
+            Events.fire(EventType.Trigger.update);
+            OverlayEngine.computeViewRect(this, view);
+            ClusterBuffer shown = BetterMiniMapFeature.refreshOverlay(view, OverlayEngine.minimapScale(view, minimapPx, minimapPx));
+            int selected = markerBudget.select(shown, Vars.player.team().id, BetterMiniMapFeature.currentSettings().markerBudget, view);
+
+            long overlayNs = System.nanoTime() - started;
+            if (tick < warmupTicks) continue;
+
+            int sample = tick - warmupTicks;
+            worldSamples[sample] = worldNs;
+            overlaySamples[sample] = overlayNs;
+            if (allocations != null) allocated += allocations.getThreadAllocatedBytes(thread) - allocatedBefore;
+            clusters += shown.size;
+            markers += selected;
+            rects += BetterMiniMapFeature.visibleBuildingRuns();
+        }
+
+        System.out.println(String.format(Locale.ROOT, "stress   units=%d types=%d teams=%d buildings=%d world=%dx%d zoom=%.1f ticks=%d fog=%s async=%b",
+            units.length, typeCount, teamCount, buildingCount(), worldSize, worldSize, zoom, ticks,
+            !BetterMiniMapFeature.fogActive() ? "off" : staticFog ? "static" : "dynamic", async));
+        System.out.println(String.format(Locale.ROOT, "avg      clusters=%d markers=%d buildingRects=%d",
+            clusters / ticks, markers / ticks, rects / ticks));
+        report("world", worldSamples);
+        report("overlay", overlaySamples);
+        if (allocations != null) {
+            double perTick = allocated / (double) ticks;
+            System.out.println(String.format(Locale.ROOT, "alloc    %.1f KB/tick  %.2f MB/s at 60 ticks/s", perTick / 1024.0, perTick * 60.0 / (1024.0 * 1024.0)));
+        } else {
+            System.out.println("alloc    unavailable on this JVM");
+        }
+    }
+
+    // Rules go in before the map load finishes, since the world load event is when the game's
+    // fog and the feature size their per-tile data.
+    private void createWorld() {
+        state.rules = new Rules();
+        state.rules.waves = false;
+        state.rules.fog = fog;
+        state.rules.staticFog = staticFog;
+
+        Tiles tiles = world.resize(worldSize, worldSize);
+        world.beginMapLoad();
+        for (int x = 0; x < worldSize; x++) {
+            for (int y = 0; y < worldSize; y++) tiles.set(x, y, new Tile(x, y, Blocks.stone, Blocks.air, Blocks.air));
+        }
+        world.endMapLoad();
+        state.set(GameState.State.playing);
+
+        Vars.player = Player.create();
+        Vars.player.team(Team.get(1));
+    }
+
+    // Each team gets a square base: bands of walls, large walls and solar panels packed edge to edge,
+    // which is the layout that stresses building runs and the chunked building index.
+    private void spawnBases() {
+        Block[] kinds = {Blocks.copperWall, Blocks.titaniumWallLarge, Blocks.solarPanel, Blocks.thoriumWallLarge, Blocks.conveyor};
+        int perTeam = baseBlocks / teamCount;
+        int side = Math.min(worldSize / 2, (int) Math.ceil(Math.sqrt(perTeam * 2.5)));
+
+        for (int t = 0; t < teamCount; t++) {
+            Team team = Team.get(t + 1);
+            int originX = rand.nextInt(Math.max(1, worldSize - side));
+            int originY = rand.nextInt(Math.max(1, worldSize - side));
+            int band = Math.max(4, side / kinds.length);
+            int placed = 0;
+
+            for (int k = 0; k < kinds.length && placed < perTeam; k++) {
+                Block block = kinds[k];
+                int size = block.size;
+                int offset = (size - 1) / 2;
+                for (int y = originY + k * band + offset; y + size - offset <= originY + (k + 1) * band && placed < perTeam; y += size) {
+                    for (int x = originX + offset; x + size - offset <= originX + side && placed < perTeam; x += size) {
+                        Tile tile = world.tile(x, y);
+                        if (tile == null || !areaFree(x - offset, y - offset, size)) continue;
+                        tile.setBlock(block, team, 0);
+                        placed++;
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean areaFree(int x, int y, int size) {
+        for (int dx = 0; dx < size; dx++) {
+            for (int dy = 0; dy < size; dy++) {
+                Tile tile = world.tile(x + dx, y + dy);
+                if (tile == null || tile.build != null || tile.block() != Blocks.air) return false;
+            }
+        }
+        return true;
+    }
+
+    private void spawnArmies() {
+        Seq<UnitType> types = content.units().select(u -> !u.internal && !u.hidden);
+        int armies = Math.max(1, (unitCount + armySize - 1) / armySize);
+        float extent = worldSize * tilesize;
+
+        waypoints = new float[armies][waypointsPerArmy * 2];
+        armyTarget = new int[armies];
+        armyOffsetX = new float[unitCount];
+        armyOffsetY = new float[unitCount];
+        for (int a = 0; a < armies; a++) {
+            for (int w = 0; w < waypointsPerArmy * 2; w++) waypoints[a][w] = extent * (0.05f + rand.nextFloat() * 0.9f);
+        }
+
+        units = new Unit[unitCount];
+        unitArmy = new int[unitCount];
+        for (int i = 0; i < unitCount; i++) {
+            int army = i / armySize;
+            Team team = Team.get(army % teamCount + 1);
+            UnitType type = types.get((i % Math.max(1, typeCount)) % types.size);
+            float radius = tilesize * 24f * (float) Math.sqrt(rand.nextFloat());
+            float angle = rand.nextFloat() * 360f;
+            armyOffsetX[i] = Angles.trnsx(angle, radius);
+            armyOffsetY[i] = Angles.trnsy(angle, radius);
+            unitArmy[i] = army;
+            units[i] = type.spawn(team, waypoints[army][0] + armyOffsetX[i], waypoints[army][1] + armyOffsetY[i]);
+        }
+    }
+
+    // Armies walk their waypoint loop in formation; the next waypoint is picked once the army's
+    // anchor unit arrives, so every unit changes position, rotation and tree cell over time.
+    private void moveArmies() {
+        float extent = worldSize * tilesize;
+        for (int a = 0; a < waypoints.length; a++) {
+            int lead = a * armySize;
+            if (lead >= units.length) break;
+            int target = armyTarget[a];
+            float tx = waypoints[a][target * 2] + armyOffsetX[lead], ty = waypoints[a][target * 2 + 1] + armyOffsetY[lead];
+            if (Math.abs(units[lead].x - tx) + Math.abs(units[lead].y - ty) < unitSpeed * 4f) {
+                armyTarget[a] = (target + 1) % waypointsPerArmy;
+            }
+        }
+
+        for (int i = 0; i < units.length; i++) {
+            Unit unit = units[i];
+            int army = unitArmy[i];
+            int target = armyTarget[army];
+            float dx = waypoints[army][target * 2] + armyOffsetX[i] - unit.x;
+            float dy = waypoints[army][target * 2 + 1] + armyOffsetY[i] - unit.y;
+            float length = (float) Math.sqrt(dx * dx + dy * dy);
+            if (length < 0.001f) continue;
+            float step = Math.min(length, unitSpeed);
+            unit.set(clamp(unit.x + dx / length * step, extent), clamp(unit.y + dy / length * step, extent));
+            unit.rotation = Angles.angle(dx, dy);
+        }
+    }
+
+    private void panCamera(int tick) {
+        float extent = worldSize * tilesize;
+        float t = tick * 0.002f;
+        cameraX = extent * (0.5f + 0.35f * (float) Math.sin(t * 2f * Math.PI));
+        cameraY = extent * (0.5f + 0.35f * (float) Math.cos(t * 1.3f * Math.PI));
+    }
+
+    private int buildingCount() {
+        int count = 0;
+        for (int i = 0; i < state.teams.present.size; i++) count += state.teams.present.get(i).buildings.size;
+        return count;
+    }
+
+    private static void report(String name, long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        int n = sorted.length;
+        System.out.println(String.format(Locale.ROOT, "%-8s p50=%.3fms p95=%.3fms p99=%.3fms max=%.3fms",
+            name, sorted[n / 2] / 1e6f, sorted[n * 95 / 100] / 1e6f, sorted[n * 99 / 100] / 1e6f, sorted[n - 1] / 1e6f));
+    }
+
+    private static float clamp(float v, float max) {
+        return Math.max(0f, Math.min(max, v));
+    }
+
+    @Override
+    public float cameraX() {
+        return cameraX;
+    }
+
+    @Override
+    public float cameraY() {
+        return cameraY;
+    }
+
+    @Override
+    public float zoom() {
+        return zoom;
+    }
+
+    @Override
+    public int worldWidth() {
+        return worldSize;
+    }
+
+    @Override
+    public int worldHeight() {
+        return worldSize;
+    }
+}
@@ -0,0 +1,69 @@
+package betterminimap.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BuildingRunsTest {
+    private static final float ts = OverlayEngine.tilesize;
+
+    @Test
+    void mergedRectsCoverEveryBuilding() {
+        BuildingSnapshot in = buildings();
+        BuildingRuns runs = new BuildingRuns();
+        runs.build(in, ts);
+
+        int total = 0;
+        for (int i = 0; i < runs.size; i++) total += runs.count[i];
+        assertEquals(in.size, total);
+    }
+
+    @Test
+    void adjacentSameBlockBuildingsMergeIntoRectangles() {
+        BuildingRuns runs = new BuildingRuns();
+        runs.build(buildings(), ts);
+
+        assertEquals(4, runs.size);
+    }
+
+    @Test
+    void wallBecomesOneRectangleCentredOnItsBuildings() {
+        BuildingRuns runs = new BuildingRuns();
+        runs.build(buildings(), ts);
+
+        int wall = -1;
+        for (int i = 0; i < runs.size; i++) {
+            if (runs.count[i] == 30) wall = i;
+        }
+        assertTrue(wall >= 0, "no 30-building rect");
+        assertEquals(24.5f * ts, runs.x[wall]);
+        assertEquals(41f * ts, runs.y[wall]);
+        assertEquals(9f * ts, runs.spanX[wall]);
+        assertEquals(2f * ts, runs.spanY[wall]);
+    }
+
+    @Test
+    void rectsSplitAtChunkBorders() {
+        BuildingRuns runs = new BuildingRuns();
+        runs.build(buildings(), ts, 32);
+
+        assertEquals(5, runs.size);
+        for (int i = 0; i < runs.size; i++) {
+            float left = runs.x[i] - runs.spanX[i] / 2f, right = runs.x[i] + runs.spanX[i] / 2f;
+            assertEquals(Math.floor((left + ts / 2f) / (32 * ts)), Math.floor((right + ts / 2f) / (32 * ts)), "rect " + i + " crosses a chunk border");
+        }
+    }
+
+    // A 10x3 wall, a row of 2x2 blocks crossing the tile-32 chunk border, a lone 2x2 and another team's wall tile.
+    private static BuildingSnapshot buildings() {
+        BuildingSnapshot in = new BuildingSnapshot();
+        for (int ty = 0; ty < 3; ty++) {
+            for (int tx = 0; tx < 10; tx++) in.add((20 + tx) * ts, (40 + ty) * ts, 5, 1, 1, 0);
+        }
+        for (int k = 0; k < 6; k++) in.add((60 + k * 2) * ts + ts / 2f, 80 * ts + ts / 2f, 7, 2, 2, 0);
+        in.add(61 * ts + ts / 2f, 90 * ts + ts / 2f, 7, 2, 2, 0);
+        in.add(21 * ts, 41 * ts + 100 * ts, 5, 1, 3, 0);
+        return in;
+    }
+}
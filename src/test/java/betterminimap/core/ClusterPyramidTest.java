@@ -0,0 +1,130 @@
+package betterminimap.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClusterPyramidTest {
+    private static final float cell = OverlayEngine.baseClusterCell;
+
+    @Test
+    void jitteringUnitsKeepTheirClusterIdsAndMembership() {
+        Random rand = new Random(7L);
+        UnitSnapshot[] snapshots = {new UnitSnapshot(), new UnitSnapshot()};
+        IntIndexMap indexById = new IntIndexMap();
+        ClusterPyramid pyramid = new ClusterPyramid();
+        int[] firstId = null;
+        int[] firstCount = null;
+
+        for (int frame = 0; frame < 20; frame++) {
+            UnitSnapshot units = snapshots[frame & 1];
+            units.clear();
+            // Units straddling the edge between two cells, jittering less than the hysteresis margin.
+            for (int u = 0; u < 64; u++) {
+                float jitter = (rand.nextFloat() - 0.5f) * cell * ClusterPyramid.cellHysteresis;
+                units.add(10f * cell + jitter, (2 + u / 8) * cell + cell / 2f, 0f, 1, u % 2, u);
+            }
+            units.linkPrevious(snapshots[(frame + 1) & 1], 1f, indexById);
+            pyramid.begin(cell, pyramid, 1f);
+            pyramid.addUnits(units, 0, units.size);
+            pyramid.finish();
+
+            ClusterBuffer base = pyramid.level(0);
+            int[] ids = new int[base.size];
+            int[] counts = new int[base.size];
+            for (int i = 0; i < base.size; i++) {
+                ids[i] = base.id[i];
+                counts[i] = base.count[i];
+            }
+            if (frame == 0) {
+                firstId = ids;
+                firstCount = counts;
+                continue;
+            }
+            assertEquals(0, pyramid.reassignedUnits(), "units reassigned in frame " + frame);
+            assertArrayEquals(firstId, ids, "cluster ids in frame " + frame);
+            assertArrayEquals(firstCount, counts, "cluster counts in frame " + frame);
+        }
+    }
+
+    @Test
+    void refreshWithAFewMovedUnitsOnlyEvaluatesThoseAndMatchesAFullRebuild() {
+        UnitSnapshot first = SyntheticUnits.generate("blobs", 4000, 4, 12, 3L);
+        UnitSnapshot second = new UnitSnapshot();
+        Random rand = new Random(5L);
+        int moved = 0;
+        for (int u = 0; u < first.size; u++) {
+            float x = first.x[u], y = first.y[u];
+            // Far enough to leave the cell's hysteresis band, so a rebuild puts them in the same cells.
+            if (u % 50 == 0) {
+                x += (rand.nextBoolean() ? 2f : -2f) * cell + rand.nextFloat() * cell;
+                y += (rand.nextBoolean() ? 2f : -2f) * cell + rand.nextFloat() * cell;
+                moved++;
+            }
+            // Every tenth unit is gone next refresh.
+            if (u % 10 != 5) second.add(x, y, first.rotation[u], first.team[u], first.type[u], first.id[u]);
+        }
+        IntIndexMap indexById = new IntIndexMap();
+        first.linkPrevious(new UnitSnapshot(), 1f, indexById);
+        second.linkPrevious(first, 1f, indexById);
+
+        ClusterPyramid pyramid = new ClusterPyramid();
+        pyramid.begin(cell, pyramid, 1f);
+        pyramid.addUnits(first, 0, first.size);
+        pyramid.finish();
+        assertEquals(first.size, pyramid.evaluatedUnits());
+
+        pyramid.begin(cell, pyramid, 1f);
+        pyramid.addUnits(second, 0, second.size);
+        pyramid.finish();
+        int removed = first.size - second.size;
+        assertTrue(pyramid.evaluatedUnits() <= moved + removed,
+            pyramid.evaluatedUnits() + " units evaluated for " + moved + " moved and " + removed + " removed");
+
+        ClusterPyramid rebuilt = new ClusterPyramid();
+        rebuilt.begin(cell);
+        rebuilt.addUnits(second, 0, second.size);
+        rebuilt.finish();
+
+        ClusterBuffer carried = pyramid.level(0), fresh = rebuilt.level(0);
+        assertEquals(fresh.size, carried.size);
+        Map<String, float[]> byCell = new HashMap<>();
+        for (int i = 0; i < fresh.size; i++) {
+            byCell.put(cellKey(fresh, i), new float[]{fresh.count[i], fresh.x[i], fresh.y[i]});
+        }
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < carried.size; i++) {
+            float[] expected = byCell.get(cellKey(carried, i));
+            assertEquals(expected[0], carried.count[i], "count of " + cellKey(carried, i));
+            assertEquals(expected[1], carried.x[i], 0.01f);
+            assertEquals(expected[2], carried.y[i], 0.01f);
+            assertTrue(ids.add(carried.id[i]), "duplicate cluster id " + carried.id[i]);
+        }
+    }
+
+    @Test
+    void shownLevelOnlyChangesOnceTheZoomClearsTheHysteresisBand() {
+        ClusterPyramid pyramid = new ClusterPyramid();
+        pyramid.begin(cell, pyramid, 1f);
+        pyramid.finish();
+        int shown = pyramid.levelFor(cell * 4f);
+        pyramid.cutStable(cell * 4f);
+
+        assertSame(pyramid.level(shown), pyramid.cutStable(cell * 4f * (1f - ClusterPyramid.levelHysteresis / 2f)));
+        assertNotSame(pyramid.level(shown), pyramid.cutStable(cell * 4f * (1f - ClusterPyramid.levelHysteresis * 2f)));
+    }
+
+    private static String cellKey(ClusterBuffer clusters, int i) {
+        return clusters.team[i] + "/" + clusters.type[i] + "/" + (int) Math.floor(clusters.x[i] / cell) + "/" + (int) Math.floor(clusters.y[i] / cell);
+    }
+}
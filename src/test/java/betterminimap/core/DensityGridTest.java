@@ -0,0 +1,48 @@
+package betterminimap.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DensityGridTest {
+    private static final float half = OverlayEngine.tilesize / 2f;
+    private static final float cell = 4f * OverlayEngine.tilesize;
+
+    @Test
+    void movingUnitsOnlyDirtyTheCellsTheyCross() {
+        SyntheticWorld world = new SyntheticWorld("blobs", 20000, 4, 12, 12, 17L);
+        DensityGrid grid = grid(world);
+        int dirtyAfterBuild = grid.dirtyCount();
+        grid.clearDirty();
+
+        Random rand = new Random(17L);
+        for (int i = 0; i < 20; i++) world.step(rand, 4f);
+        grid.update(world.units, world.unitFilter, world.playerTeam, true, true);
+        assertTrue(grid.dirtyCount() < dirtyAfterBuild, grid.dirtyCount() + " of " + dirtyAfterBuild + " cells dirty");
+    }
+
+    @Test
+    void incrementalUpdatesMatchAFreshRebuild() {
+        SyntheticWorld world = new SyntheticWorld("blobs", 20000, 4, 12, 12, 17L);
+        DensityGrid incremental = grid(world);
+        Random rand = new Random(17L);
+        for (int i = 0; i < 20; i++) world.step(rand, 4f);
+        incremental.update(world.units, world.unitFilter, world.playerTeam, true, true);
+        world.units.size -= 1000;
+        incremental.update(world.units, world.unitFilter, world.playerTeam, true, true);
+
+        DensityGrid fresh = grid(world);
+        assertEquals(fresh.units(), incremental.units());
+        for (int c = 0; c < fresh.width() * fresh.height(); c++) assertEquals(fresh.count(c), incremental.count(c), "cell " + c);
+    }
+
+    private static DensityGrid grid(SyntheticWorld world) {
+        DensityGrid grid = new DensityGrid();
+        grid.reset(-half, -half, SyntheticUnits.worldSize, SyntheticUnits.worldSize, cell);
+        grid.update(world.units, world.unitFilter, world.playerTeam, true, true);
+        return grid;
+    }
+}
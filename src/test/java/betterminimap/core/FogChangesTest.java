@@ -0,0 +1,82 @@
+package betterminimap.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FogChangesTest {
+    private static final int settlePasses = 2;
+
+    private final FogChanges changes = new FogChanges(settlePasses);
+
+    // Two sources far apart on a 256x256 map (16x16 chunks), left to settle.
+    @BeforeEach
+    void settle() {
+        changes.reset(256, 256);
+        for (int i = 0; i <= settlePasses + 1; i++) pass(40, 40);
+    }
+
+    @Test
+    void aFreshMapIsReadWhole() {
+        FogChanges fresh = new FogChanges(settlePasses);
+        fresh.reset(256, 256);
+        fresh.begin();
+        fresh.finish();
+        assertEquals(256, fresh.dirtyCount());
+    }
+
+    @Test
+    void sourcesThatStayPutLeaveNothingToRead() {
+        pass(40, 40);
+        assertEquals(0, changes.dirtyCount());
+    }
+
+    @Test
+    void aMovedSourceMarksOnlyTheChunksUnderItsOldAndNewCircle() {
+        pass(100, 40);
+        Set<Integer> dirty = dirty();
+        // Radius 7 around (40, 40) covers chunks 2 in both axes; around (100, 40) chunks 5..6, 2.
+        assertEquals(Set.of(chunk(2, 2), chunk(5, 2), chunk(6, 2)), dirty);
+
+        // The chunks stay dirty while the game's fog catches up, then drop out.
+        for (int i = 0; i < settlePasses; i++) {
+            pass(100, 40);
+            assertEquals(dirty, dirty());
+        }
+        pass(100, 40);
+        assertEquals(0, changes.dirtyCount());
+    }
+
+    @Test
+    void aVanishedSourceMarksWhereItWas() {
+        changes.begin();
+        changes.source(1, 200, 200, 7);
+        changes.finish();
+        Set<Integer> dirty = dirty();
+        assertTrue(dirty.contains(chunk(2, 2)));
+        assertEquals(1, dirty.size());
+    }
+
+    // Source 1 moves as given; source 2 stays at (200, 200).
+    private void pass(int x, int y) {
+        changes.begin();
+        changes.source(1, 200, 200, 7);
+        changes.source(2, x, y, 7);
+        changes.finish();
+    }
+
+    private Set<Integer> dirty() {
+        Set<Integer> dirty = new HashSet<>();
+        for (int i = 0; i < changes.dirtyCount(); i++) dirty.add(changes.dirtyChunk(i));
+        return dirty;
+    }
+
+    private int chunk(int cx, int cy) {
+        return cx + cy * changes.chunksX();
+    }
+}
@@ -0,0 +1,84 @@
+package betterminimap.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MarkerBudgetTest {
+    private SyntheticWorld world;
+    private ClusterBuffer clusters;
+    private final MarkerBudget budget = new MarkerBudget();
+
+    @BeforeEach
+    void cluster() {
+        world = new SyntheticWorld("blobs", 20000, 4, 60, 16, 13L);
+        world.zoom = 32f;
+        OverlayEngine engine = new OverlayEngine();
+        engine.refresh(world, world, world, 1f, world.clusterWorld());
+        clusters = engine.pyramid().level(0);
+    }
+
+    @Test
+    void unlimitedBudgetKeepsEveryCluster() {
+        assertEquals(clusters.size, budget.select(clusters, world.playerTeam, Integer.MAX_VALUE, null));
+    }
+
+    @Test
+    void budgetCapsTheMarkerCount() {
+        int limit = clusters.size / 3;
+        assertEquals(limit, budget.select(clusters, world.playerTeam, limit, null));
+    }
+
+    @Test
+    void enemyClustersAreKeptBeforeFriendlyOnes() {
+        int limit = clusters.size / 3;
+        int kept = budget.select(clusters, world.playerTeam, limit, null);
+
+        int keptEnemies = 0;
+        for (int n = 0; n < kept; n++) {
+            if (clusters.team[budget.get(n)] != world.playerTeam) keptEnemies++;
+        }
+        int enemies = 0;
+        for (int i = 0; i < clusters.size; i++) {
+            if (clusters.team[i] != world.playerTeam) enemies++;
+        }
+        assertEquals(Math.min(enemies, limit), keptEnemies);
+    }
+
+    @Test
+    void droppedEnemyClustersAreNeverLargerThanKeptOnes() {
+        int kept = budget.select(clusters, world.playerTeam, clusters.size / 3, null);
+
+        boolean[] chosen = new boolean[clusters.size];
+        int minEnemyCount = Integer.MAX_VALUE;
+        for (int n = 0; n < kept; n++) {
+            int i = budget.get(n);
+            chosen[i] = true;
+            if (clusters.team[i] != world.playerTeam) minEnemyCount = Math.min(minEnemyCount, clusters.count[i]);
+        }
+        if (minEnemyCount == Integer.MAX_VALUE) return;
+        for (int i = 0; i < clusters.size; i++) {
+            if (clusters.team[i] == world.playerTeam || chosen[i]) continue;
+            // Selection is bucketed by powers of two, so a dropped cluster may tie but never double a kept one.
+            assertTrue(clusters.count[i] < minEnemyCount * 2, "dropped cluster of " + clusters.count[i] + " units");
+        }
+    }
+
+    @Test
+    void cullingDropsClustersOutsideTheView() {
+        ViewRect half = new ViewRect().set(0f, 0f, SyntheticUnits.worldSize / 2f, SyntheticUnits.worldSize);
+        int culled = budget.select(clusters, world.playerTeam, Integer.MAX_VALUE, half);
+
+        assertTrue(culled < clusters.size);
+        for (int n = 0; n < culled; n++) assertTrue(half.contains(clusters.x[budget.get(n)], clusters.y[budget.get(n)]));
+    }
+
+    @Test
+    void markerTierFollowsSizeAndCrowding() {
+        assertEquals(MarkerBudget.tierFull, MarkerBudget.tier(20f, 100));
+        assertEquals(MarkerBudget.tierIcon, MarkerBudget.tier(20f, MarkerBudget.iconOnlyClusters + 1));
+        assertEquals(MarkerBudget.tierDot, MarkerBudget.tier(1f, 100));
+    }
+}
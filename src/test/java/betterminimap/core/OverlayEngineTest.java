@@ -0,0 +1,112 @@
+package betterminimap.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OverlayEngineTest {
+    @Test
+    void viewClampsToTheBottomLeftCorner() {
+        SyntheticWorld world = new SyntheticWorld("uniform", 0, 1, 1, 1, 1L);
+        world.cameraX = world.cameraY = 0f;
+        ViewRect view = new ViewRect();
+        OverlayEngine.computeViewRect(world, view);
+
+        assertEquals(0f, view.x);
+        assertEquals(0f, view.y);
+    }
+
+    @Test
+    void viewSizeFollowsZoom() {
+        SyntheticWorld world = new SyntheticWorld("uniform", 0, 1, 1, 1, 1L);
+        world.zoom = 4f;
+        ViewRect view = new ViewRect();
+        OverlayEngine.computeViewRect(world, view);
+
+        assertEquals(OverlayEngine.minimapBaseSize * 4f * 2f * OverlayEngine.tilesize, view.width);
+    }
+
+    @Test
+    void viewClampsToTheTopRightCorner() {
+        SyntheticWorld world = new SyntheticWorld("uniform", 0, 1, 1, 1, 1L);
+        world.cameraX = world.cameraY = SyntheticUnits.worldSize;
+        ViewRect view = new ViewRect();
+        OverlayEngine.computeViewRect(world, view);
+
+        assertEquals(world.widthTiles * OverlayEngine.tilesize, view.x + view.width);
+    }
+
+    @Test
+    void filterKeepsExactlyTheEnabledInViewUnits() {
+        SyntheticWorld world = new SyntheticWorld("blobs", 5000, 4, 12, 16, 7L);
+        world.zoom = 10f;
+        OverlayEngine engine = new OverlayEngine();
+        ViewRect view = engine.refresh(world, world, world, 1f, world.clusterWorld());
+
+        int expected = 0;
+        for (int i = 0; i < world.units.size; i++) {
+            if (world.unitFilter[world.units.type[i]] && view.contains(world.units.x[i], world.units.y[i])) expected++;
+        }
+        assertEquals(expected, engine.units().size);
+    }
+
+    @Test
+    void clustersAccountForEveryVisibleUnit() {
+        SyntheticWorld world = new SyntheticWorld("blobs", 5000, 4, 12, 16, 7L);
+        world.zoom = 10f;
+        OverlayEngine engine = new OverlayEngine();
+        engine.refresh(world, world, world, 1f, world.clusterWorld());
+
+        ClusterBuffer clusters = engine.cluster(world.clusterWorld());
+        int total = 0;
+        for (int i = 0; i < clusters.size; i++) total += clusters.count[i];
+        assertEquals(engine.units().size, total);
+    }
+
+    @Test
+    void everyClusterLevelCoarsensTheOneBelow() {
+        SyntheticWorld world = new SyntheticWorld("blobs", 5000, 4, 12, 16, 7L);
+        world.zoom = 10f;
+        OverlayEngine engine = new OverlayEngine();
+        engine.refresh(world, world, world, 1f, world.clusterWorld());
+
+        ClusterPyramid pyramid = engine.pyramid();
+        int previousSize = Integer.MAX_VALUE;
+        for (int level = 0; level < ClusterPyramid.maxLevels; level++) {
+            ClusterBuffer cut = pyramid.level(level);
+            int sum = 0;
+            for (int i = 0; i < cut.size; i++) sum += cut.count[i];
+            assertEquals(engine.units().size, sum, "units at level " + level);
+            assertTrue(cut.size <= previousSize, "level " + level + " has more clusters than the one below");
+            previousSize = cut.size;
+        }
+    }
+
+    @Test
+    void hidingEnemiesDropsEnemyUnitsAndBuildings() {
+        SyntheticWorld world = new SyntheticWorld("blobs", 5000, 4, 12, 16, 7L);
+        world.zoom = 10f;
+        world.showEnemy = false;
+        OverlayEngine engine = new OverlayEngine();
+        engine.refresh(world, world, world, 1f, world.clusterWorld());
+
+        for (int i = 0; i < engine.units().size; i++) assertEquals(world.playerTeam, engine.units().team[i]);
+        for (int i = 0; i < engine.buildings().size; i++) assertEquals(world.playerTeam, engine.buildings().team[i]);
+    }
+
+    @Test
+    void unchangedUnitsDoNotMoveBetweenSnapshots() {
+        SyntheticWorld world = new SyntheticWorld("uniform", 1000, 2, 4, 4, 11L);
+        world.zoom = 32f;
+        OverlayEngine engine = new OverlayEngine();
+        engine.refresh(world, world, world, 1f, world.clusterWorld());
+        engine.refresh(world, world, world, 1f, world.clusterWorld());
+
+        UnitSnapshot units = engine.units();
+        for (int i = 0; i < units.size; i++) {
+            assertEquals(units.x[i], units.prevX[i]);
+            assertEquals(units.y[i], units.prevY[i]);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package betterminimap.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SnapshotReplayTest {
+    private static final int frames = 12;
+
+    @TempDir
+    File dir;
+
+    @Test
+    void replayingARecordingReproducesTheVisibleUnitsBuildingsAndClusters() throws IOException {
+        SyntheticWorld world = new SyntheticWorld("blobs", 3000, 4, 24, 32, 11L);
+        world.zoom = 16f;
+        OverlayEngine recorded = new OverlayEngine();
+        Random rand = new Random(11L);
+        int[] unitCounts = new int[frames];
+        int[] clusterCounts = new int[frames];
+        int[] buildingCounts = new int[frames];
+
+        File file = new File(dir, "world.bmmr");
+        SnapshotRecorder recorder = new SnapshotRecorder(file);
+        UnitSnapshot units = new UnitSnapshot();
+        BuildingSnapshot buildings = new BuildingSnapshot();
+        for (int frame = 0; frame < frames; frame++) {
+            world.step(rand, 6f);
+            ViewRect view = recorded.refresh(world, world, world, 1f, world.clusterWorld());
+            unitCounts[frame] = recorded.units().size;
+            buildingCounts[frame] = recorded.buildings().size;
+            clusterCounts[frame] = recorded.cluster(world.clusterWorld()).size;
+
+            units.clear();
+            world.collectUnits(view, world, units);
+            buildings.clear();
+            world.collectBuildings(view, world, buildings);
+            recorder.write(view, world, world.playerTeam(), units, buildings);
+        }
+        recorder.close();
+
+        SnapshotReplay replay = new SnapshotReplay(file);
+        assertEquals(frames, replay.frameCount());
+
+        OverlayEngine replayed = new OverlayEngine();
+        int frame = 0;
+        for (; replay.next(); frame++) {
+            float clusterWorld = SyntheticWorld.clusterWorld(replay, world);
+            replayed.refresh(replay, world, replay, 1f, clusterWorld);
+            assertEquals(unitCounts[frame], replayed.units().size, "units in frame " + frame);
+            assertEquals(buildingCounts[frame], replayed.buildings().size, "buildings in frame " + frame);
+            assertEquals(clusterCounts[frame], replayed.cluster(clusterWorld).size, "clusters in frame " + frame);
+        }
+        assertEquals(frames, frame, "replayed frames");
+    }
+}
@@ -0,0 +1,99 @@
+package betterminimap.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VisibilityMaskTest {
+    private static final float ts = OverlayEngine.tilesize;
+
+    private final VisibilityMask fog = new VisibilityMask();
+    private final ViewRect view = new ViewRect().set(0f, 0f, 64 * ts, 64 * ts);
+
+    // Units are visible on tiles 0..15 in both axes, buildings only on columns 0..7 of those.
+    @BeforeEach
+    void reveal() {
+        fog.reset(64, 64);
+        fog.setEnabled(true);
+        for (int x = 0; x < 16; x++) {
+            for (int y = 0; y < 16; y++) fog.setTile(x, y, true, x < 8);
+        }
+    }
+
+    @Test
+    void fogHidesEnemyUnitsOutsideTheVisibleTilesOnly() {
+        UnitSnapshot in = new UnitSnapshot();
+        in.add(4 * ts, 4 * ts, 0f, 2, 0, 1);
+        in.add(40 * ts, 40 * ts, 0f, 2, 0, 2);
+        in.add(40 * ts, 40 * ts, 0f, 1, 0, 3);
+        UnitSnapshot out = new UnitSnapshot();
+        UnitFilter.filter(in, 0, in.size, out, new boolean[]{true}, 1, true, true, view, fog);
+
+        assertEquals(2, out.size);
+        assertEquals(1, out.id[0]);
+        assertEquals(3, out.id[1]);
+    }
+
+    @Test
+    void undiscoveredEnemyBuildingsStayHidden() {
+        SyntheticWorld world = new SyntheticWorld("uniform", 0, 2, 4, 4, 1L);
+        BuildingSnapshot buildings = new BuildingSnapshot();
+        buildings.add(4 * ts, 4 * ts, 0, 1, 2, 0);
+        buildings.add(12 * ts, 4 * ts, 0, 1, 2, 1);
+        buildings.add(12 * ts, 4 * ts, 0, 1, 1, 2);
+        BuildingSnapshot visible = new BuildingSnapshot();
+        BuildingFilter.filter(buildings, visible, world, 1, view, fog);
+
+        assertEquals(2, visible.size);
+        assertEquals(0, visible.tile[0]);
+        assertEquals(2, visible.tile[1]);
+    }
+
+    @Test
+    void buildingShowsWhenAnyTileOfItsFootprintIsVisible() {
+        assertTrue(fog.buildingVisible(8 * ts, 4 * ts, 3));
+        assertFalse(fog.buildingVisible(9 * ts, 4 * ts, 3));
+    }
+
+    @Test
+    void evenSizedFootprintsStartAtTheOriginTile() {
+        assertTrue(fog.buildingVisible(7.5f * ts, 4.5f * ts, 2));
+        assertFalse(fog.buildingVisible(8.5f * ts, 4.5f * ts, 2));
+    }
+
+    @Test
+    void withoutFogEverythingIsVisible() {
+        fog.setEnabled(false);
+
+        assertTrue(fog.unitVisible(40 * ts, 40 * ts));
+        assertTrue(fog.buildingVisible(12 * ts, 4 * ts));
+    }
+
+    @Test
+    void enablingStartsFromAllHidden() {
+        fog.setEnabled(false);
+        fog.setEnabled(true);
+
+        assertFalse(fog.unitVisible(4 * ts, 4 * ts));
+        assertFalse(fog.buildingVisible(4 * ts, 4 * ts));
+    }
+
+    @Test
+    void eachTeamKeepsItsOwnBitsWhenTheShownTeamSwitches() {
+        fog.show(1);
+        fog.setTile(1, 20, 20, true, true);
+        fog.setTile(2, 30, 30, true, true);
+        assertTrue(fog.unitVisible(20 * ts, 20 * ts));
+        assertFalse(fog.unitVisible(30 * ts, 30 * ts));
+
+        fog.show(2);
+        assertFalse(fog.unitVisible(20 * ts, 20 * ts));
+        assertTrue(fog.buildingVisible(30 * ts, 30 * ts));
+
+        fog.show(1);
+        assertTrue(fog.unitVisible(20 * ts, 20 * ts));
+    }
+}
@@ -0,0 +1,88 @@
+package betterminimap.update;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UpdateFeedTest {
+    private static final String release = "{\"html_url\": \"https://example.invalid/r/v2.0.0\", \"author\": {\"tag_name\": \"v9\"},"
+        + " \"tag_name\": \"v2.0.0\", \"assets\": [{\"name\": \"x\"}]}";
+
+    private final AtomicInteger fullResponses = new AtomicInteger();
+    private HttpServer server;
+    private String base;
+
+    // Serves `release` with an ETag at /latest, answering a matching If-None-Match with a 304, and a 404 at /missing.
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/latest", exchange -> {
+            if ("\"r2\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                byte[] body = release.getBytes(StandardCharsets.UTF_8);
+                fullResponses.incrementAndGet();
+                exchange.getResponseHeaders().set("ETag", "\"r2\"");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            exchange.close();
+        });
+        server.createContext("/missing", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+    }
+
+    @Test
+    void lookupReadsOnlyTopLevelFields() {
+        assertEquals("v2.0.0", UpdateFeed.topLevelString(release, "tag_name"));
+    }
+
+    @Test
+    void parallelLookupKeepsTheFirstValidAnswer() throws InterruptedException {
+        UpdateFeed.Source api = new UpdateFeed.Source("api", base + "/latest", "html_url", "tag_name", "name");
+        UpdateFeed.Source raw = new UpdateFeed.Source("raw", base + "/missing", null, "version");
+        String[] winner = {null};
+        UpdateFeed.fetchAll(new UpdateFeed.Source[]{raw, api}, 2000, (source, first) -> {
+            if (first) winner[0] = source.name;
+        });
+
+        assertEquals("api", winner[0]);
+        assertEquals("2.0.0", api.version);
+        assertEquals("\"r2\"", api.etag);
+        assertFalse(raw.valid);
+    }
+
+    @Test
+    void unchangedReleaseIsRevalidatedWithA304() {
+        UpdateFeed.Source api = new UpdateFeed.Source("api", base + "/latest", "html_url", "tag_name", "name");
+        UpdateFeed.fetch(api, 2000);
+        UpdateFeed.fetch(api, 2000);
+
+        assertTrue(api.notModified);
+        assertTrue(api.valid);
+        assertEquals("2.0.0", api.version);
+        assertEquals(1, fullResponses.get());
+    }
+}
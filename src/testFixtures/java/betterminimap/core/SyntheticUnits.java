@@ -0,0 +1,60 @@
+package betterminimap.core;
+
+import java.util.Random;
+
+final class SyntheticUnits {
+    static final float worldSize = 500f * 8f;
+
+    private SyntheticUnits() {
+    }
+
+    static UnitSnapshot generate(String distribution, int units, int teams, int types, long seed) {
+        Random rand = new Random(seed);
+        UnitSnapshot out = new UnitSnapshot();
+
+        int blobs = Math.max(1, units / 400);
+        float[] blobX = new float[blobs];
+        float[] blobY = new float[blobs];
+        for (int i = 0; i < blobs; i++) {
+            blobX[i] = worldSize * (0.1f + 0.8f * rand.nextFloat());
+            blobY[i] = worldSize * (0.1f + 0.8f * rand.nextFloat());
+        }
+
+        int lines = Math.max(1, teams * 2);
+        for (int i = 0; i < units; i++) {
+            float x, y;
+            switch (distribution) {
+                case "blobs": {
+                    int b = rand.nextInt(blobs);
+                    x = blobX[b] + (float) rand.nextGaussian() * 48f;
+                    y = blobY[b] + (float) rand.nextGaussian() * 48f;
+                    break;
+                }
+                case "lines": {
+                    int line = i % lines;
+                    float t = rand.nextFloat();
+                    x = worldSize * t;
+                    y = worldSize * (line + 0.5f) / lines + (float) rand.nextGaussian() * 6f;
+                    break;
+                }
+                default:
+                    x = worldSize * rand.nextFloat();
+                    y = worldSize * rand.nextFloat();
+                    break;
+            }
+
+            out.add(clamp(x), clamp(y), rand.nextFloat() * 360f, 1 + rand.nextInt(teams), rand.nextInt(types), i);
+        }
+
+        for (int i = 0; i < out.size; i++) {
+            out.prevX[i] = out.x[i] - 2f + rand.nextFloat() * 4f;
+            out.prevY[i] = out.y[i] - 2f + rand.nextFloat() * 4f;
+            out.prevRotation[i] = out.rotation[i];
+        }
+        return out;
+    }
+
+    private static float clamp(float v) {
+        return Math.max(0f, Math.min(worldSize, v));
+    }
+}
@@ -0,0 +1,171 @@
+package betterminimap.core;
+
+import java.util.Arrays;
+import java.util.Random;
+
+final class SyntheticWorld implements EntitySource, Viewport, OverlaySettings {
+    static final float minimapPx = 200f;
+
+    private static final ViewRect scratchView = new ViewRect();
+
+    final UnitSnapshot units;
+    final BuildingSnapshot buildings = new BuildingSnapshot();
+    final boolean[] unitFilter;
+    final boolean[] blockFilter;
+    final int widthTiles;
+    final int heightTiles;
+
+    int playerTeam = 1;
+    float cameraX;
+    float cameraY;
+    float zoom = 4f;
+    boolean showEnemy = true;
+    boolean showFriendly = true;
+
+    SyntheticWorld(String distribution, int unitCount, int teams, int types, int blocks, long seed) {
+        units = SyntheticUnits.generate(distribution, unitCount, teams, types, seed);
+        widthTiles = heightTiles = (int) (SyntheticUnits.worldSize / OverlayEngine.tilesize);
+        cameraX = cameraY = SyntheticUnits.worldSize / 2f;
+
+        unitFilter = new boolean[types];
+        for (int i = 0; i < types; i++) unitFilter[i] = i % 4 != 3;
+        blockFilter = new boolean[blocks];
+        Arrays.fill(blockFilter, true);
+
+        Random rand = new Random(seed ^ 0x5DEECE66DL);
+        for (int i = 0; i < unitCount / 4; i++) {
+            int tx = rand.nextInt(widthTiles), ty = rand.nextInt(heightTiles);
+            buildings.add(tx * OverlayEngine.tilesize, ty * OverlayEngine.tilesize, rand.nextInt(blocks), 1 + rand.nextInt(3), 1 + rand.nextInt(teams), tx + ty * widthTiles);
+        }
+    }
+
+    void step(Random rand, float speed) {
+        for (int i = 0; i < units.size; i++) {
+            units.x[i] = clamp(units.x[i] + (rand.nextFloat() - 0.5f) * speed, SyntheticUnits.worldSize);
+            units.y[i] = clamp(units.y[i] + (rand.nextFloat() - 0.5f) * speed, SyntheticUnits.worldSize);
+            units.rotation[i] = (units.rotation[i] + rand.nextFloat() * 10f) % 360f;
+        }
+    }
+
+    @Override
+    public int playerTeam() {
+        return playerTeam;
+    }
+
+    @Override
+    public void collectUnits(ViewRect rect, OverlaySettings settings, UnitSnapshot out) {
+        for (int i = 0; i < units.size; i++) {
+            out.add(units.x[i], units.y[i], units.rotation[i], units.team[i], units.type[i], units.id[i]);
+        }
+    }
+
+    @Override
+    public void collectBuildings(ViewRect rect, OverlaySettings settings, BuildingSnapshot out) {
+        for (int i = 0; i < buildings.size; i++) {
+            out.add(buildings.x[i], buildings.y[i], buildings.block[i], buildings.blockSize[i], buildings.team[i], buildings.tile[i]);
+        }
+    }
+
+    @Override
+    public float cameraX() {
+        return cameraX;
+    }
+
+    @Override
+    public float cameraY() {
+        return cameraY;
+    }
+
+    @Override
+    public float zoom() {
+        return zoom;
+    }
+
+    @Override
+    public int worldWidth() {
+        return widthTiles;
+    }
+
+    @Override
+    public int worldHeight() {
+        return heightTiles;
+    }
+
+    @Override
+    public int version() {
+        return 1;
+    }
+
+    @Override
+    public boolean enabled() {
+        return true;
+    }
+
+    @Override
+    public boolean unitsEnabled() {
+        return true;
+    }
+
+    @Override
+    public boolean buildingsEnabled() {
+        return true;
+    }
+
+    @Override
+    public boolean showFriendlyUnits() {
+        return showFriendly;
+    }
+
+    @Override
+    public boolean showEnemyUnits() {
+        return showEnemy;
+    }
+
+    @Override
+    public boolean showFriendlyBuildings() {
+        return showFriendly;
+    }
+
+    @Override
+    public boolean showEnemyBuildings() {
+        return showEnemy;
+    }
+
+    @Override
+    public float unitSizePx() {
+        return 6f;
+    }
+
+    @Override
+    public float unitClusterPx() {
+        return 12f;
+    }
+
+    @Override
+    public float buildingScale() {
+        return 1.2f;
+    }
+
+    @Override
+    public boolean[] unitFilter() {
+        return unitFilter;
+    }
+
+    @Override
+    public boolean[] blockFilter() {
+        return blockFilter;
+    }
+
+    float clusterWorld() {
+        return clusterWorld(this, this);
+    }
+
+    static float clusterWorld(Viewport viewport, OverlaySettings settings) {
+        OverlayEngine.computeViewRect(viewport, scratchView);
+        return OverlayEngine.clusterWorld(settings.unitClusterPx(), OverlayEngine.minimapScale(scratchView, minimapPx, minimapPx));
+    }
+
+    private static float clamp(float v, float max) {
+        return Math.max(0f, Math.min(max, v));
+    }
+}